@@ -0,0 +1,61 @@
+/*
+ * BenchWords.java
+ */
+
+package passwordgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds synthetic word pools of a given size for the benchmarks by repeating
+ * the bundled dictionary.
+ */
+final class BenchWords {
+
+    private static String[] seed;
+
+    private BenchWords() {
+    }
+
+    static synchronized String[] seed() throws IOException {
+        if (seed == null) {
+            InputStream in = BenchWords.class.getResourceAsStream(WordPoolResource.RESOURCE);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+            try {
+                byte[] chunk = new byte[1 << 16];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    bytes.write(chunk, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            seed = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim().split("\n");
+        }
+        return seed;
+    }
+
+    /**
+     * @return wordCount words separated by the delimiter
+     */
+    static String text(int wordCount, String delimiter) throws IOException {
+        String[] words = seed();
+        StringBuilder sb = new StringBuilder(wordCount * 11);
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                sb.append(delimiter);
+            }
+            sb.append(words[i % words.length]);
+        }
+        return sb.toString();
+    }
+
+    static WordList wordList(int wordCount) throws IOException {
+        WordList list = new WordList();
+        list.importFromString(text(wordCount, " "), true);
+        return list;
+    }
+}
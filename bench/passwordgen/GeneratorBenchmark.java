@@ -0,0 +1,340 @@
+/*
+ * GeneratorBenchmark.java
+ */
+
+package passwordgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the character-class password algorithm and the passphrase
+ * algorithm. The legacy variants reproduce what PasswordGenView does per
+ * click, minus the progress bar updates, so they can be compared with
+ * PasswordEngine and the batch passphrase path. The policy variants compare a
+ * compiled PasswordPolicy with generating and rejecting until compliant. The
+ * unique variants add a UniquenessFilter check, one password at a time or in
+ * batches, the breached variant a BreachedHashes lookup in a synthetic
+ * file of random 8-byte prefixes, and the dictionary variant a
+ * DictionaryScanner pass over the shipped word pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @State(Scope.Thread)
+    public static class PasswordState {
+
+        @Param({"10", "16", "32"})
+        public int length;
+
+        public final int upper = 2;
+        public final int numeric = 2;
+        public final int special = 2;
+        public final String specials = PasswordEngine.DEFAULT_SPECIAL;
+
+        RandomSource rnd;
+        char[] password;
+        PasswordEngine engine;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rnd = RandomSource.current();
+            password = new char[length];
+            engine = new PasswordEngine(length, upper, numeric, special, specials);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PolicyState {
+
+        @Param({"length=16; upper=3; numeric=3; special=3; exclude-ambiguous; max-repeat=1; "
+                + "no-leading-digit; first=upper; last=special"})
+        public String rules;
+
+        RandomSource rnd;
+        char[] password;
+        CharSequence view;
+        PasswordPolicy policy;
+        PasswordEngine engine;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rnd = RandomSource.current();
+            policy = PasswordPolicy.compile(rules);
+            password = new char[policy.length()];
+            view = CharBuffer.wrap(password);
+            engine = new PasswordEngine(policy.length(), 3, 3, 3, PasswordEngine.DEFAULT_SPECIAL);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class UniqueState {
+
+        static final int BATCH = 32;
+
+        @Param({"1000000", "10000000"})
+        public long capacity;
+
+        UniquenessFilter filter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            filter = UniquenessFilter.create(capacity);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BreachedState {
+
+        @Param({"1000000", "30000000"})
+        public int hashes;
+
+        File file;
+        BreachedHashes breached;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            long[] keys = new long[hashes];
+            Random random = new Random(42);
+            for (int i = 0; i < hashes; i++) {
+                // flipped so a signed sort orders them as unsigned
+                keys[i] = random.nextLong() ^ Long.MIN_VALUE;
+            }
+            Arrays.sort(keys);
+            file = File.createTempFile("breached", ".bin");
+            FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+                buffer.putInt(BreachedHashes.MAGIC).putInt(BreachedHashes.VERSION)
+                        .putInt(BreachedHashes.Algorithm.SHA1.ordinal())
+                        .putInt(BreachedHashes.MIN_PREFIX).putLong(hashes);
+                for (long key : keys) {
+                    if (!buffer.hasRemaining()) {
+                        write(out, buffer);
+                    }
+                    buffer.putLong(key ^ Long.MIN_VALUE);
+                }
+                write(out, buffer);
+            } finally {
+                out.close();
+            }
+            breached = BreachedHashes.open(file);
+        }
+
+        private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DictionaryState {
+
+        @Param({"4", "6"})
+        public int minWord;
+
+        DictionaryScanner dictionary;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dictionary = DictionaryScanner.of(MappedWordPool.openDefault(), minWord);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UniqueBuffers {
+
+        final char[] text = new char[UniqueState.BATCH * 17];
+        final int[] starts = new int[UniqueState.BATCH];
+        final int[] lengths = new int[UniqueState.BATCH];
+        final long[] hashes = new long[UniqueState.BATCH];
+        final boolean[] added = new boolean[UniqueState.BATCH];
+        RandomSource rnd;
+        PasswordEngine engine;
+        char[] password;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rnd = RandomSource.current();
+            engine = new PasswordEngine(16, 2, 2, 2, PasswordEngine.DEFAULT_SPECIAL);
+            password = new char[16];
+            for (int i = 0; i < UniqueState.BATCH; i++) {
+                starts[i] = i * 17;
+                lengths[i] = 16;
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PhraseState {
+
+        @Param({"10000", "100000", "1000000"})
+        public int wordCount;
+
+        @Param({"5"})
+        public int words;
+
+        @Param({"4"})
+        public int minLength;
+
+        WordList list;
+        MappedWordPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            list = BenchWords.wordList(wordCount);
+            pool = MappedWordPool.fromWordList(list);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PhraseBuffers {
+
+        final StringBuilder phrase = new StringBuilder(128);
+        RandomSource rnd;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rnd = RandomSource.current();
+        }
+    }
+
+    @Benchmark
+    public String legacyPassword(PasswordState s) {
+        String alpha = PasswordEngine.LOWER;
+        String numeric = PasswordEngine.NUMERIC;
+        Vector<Character> passwdchars = new Vector<Character>();
+
+        int numericCount = s.numeric;
+        int specialCount = s.special;
+        int upperCount = s.upper;
+
+        while (upperCount-- > 0) {
+            passwdchars.add(alpha.toUpperCase().charAt(WordList.myRandom(alpha.length())));
+        }
+        while (numericCount-- > 0) {
+            passwdchars.add(numeric.charAt(WordList.myRandom(numeric.length())));
+        }
+        while (specialCount-- > 0) {
+            passwdchars.add(s.specials.charAt(WordList.myRandom(s.specials.length())));
+        }
+        while (passwdchars.size() < s.length) {
+            passwdchars.add(alpha.charAt(WordList.myRandom(alpha.length())));
+        }
+
+        String result = "";
+        while (passwdchars.size() > 0) {
+            result += passwdchars.remove(WordList.myRandom(passwdchars.size()));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public char[] enginePassword(PasswordState s) {
+        s.engine.generate(s.password, s.rnd);
+        return s.password;
+    }
+
+    @Benchmark
+    public char[] policyPassword(PolicyState s) {
+        s.policy.generate(s.password, s.rnd);
+        return s.password;
+    }
+
+    /**
+     * Generate-and-reject with the engine, for comparison with the compiled
+     * policy; the engine's counts must match the policy's.
+     */
+    @Benchmark
+    public char[] rejectionPassword(PolicyState s) {
+        do {
+            s.engine.generate(s.password, s.rnd);
+        } while (!s.policy.accepts(s.view));
+        return s.password;
+    }
+
+    @Benchmark
+    public boolean uniquePassword(UniqueState s, UniqueBuffers b) {
+        b.engine.generate(b.password, b.rnd);
+        return s.filter.add(b.password, 0, 16);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UniqueState.BATCH)
+    public int uniquePasswordBatch(UniqueState s, UniqueBuffers b) {
+        for (int i = 0; i < UniqueState.BATCH; i++) {
+            b.engine.generate(b.password, b.rnd);
+            System.arraycopy(b.password, 0, b.text, b.starts[i], 16);
+        }
+        return s.filter.add(b.text, b.starts, b.lengths, UniqueState.BATCH, b.hashes, b.added);
+    }
+
+    @Benchmark
+    public boolean breachedPassword(BreachedState s, UniqueBuffers b) {
+        b.engine.generate(b.password, b.rnd);
+        return s.breached.contains(b.password, 0, 16);
+    }
+
+    @Benchmark
+    public boolean dictionaryPassword(DictionaryState s, UniqueBuffers b) {
+        b.engine.generate(b.password, b.rnd);
+        return s.dictionary.containsWord(b.password, 0, 16);
+    }
+
+    @Benchmark
+    public String legacyPassphrase(PhraseState s) {
+        String phrase = "";
+        for (int i = 0; i < s.words; ++i) {
+            phrase += " " + s.list.random(s.minLength);
+        }
+        return phrase;
+    }
+
+    @Benchmark
+    public CharSequence batchPassphrase(PhraseState s, PhraseBuffers b) {
+        int choices = s.pool.countAtLeast(s.minLength);
+        int from = s.pool.size() - choices;
+        b.phrase.setLength(0);
+        for (int w = 0; w < s.words; w++) {
+            if (w > 0) {
+                b.phrase.append(' ');
+            }
+            b.phrase.append(s.pool.word(from + b.rnd.nextInt(choices)));
+        }
+        return b.phrase;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * WordListBenchmark.java
+ */
+
+package passwordgen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the WordList import, draw, filter and copy paths. Setting
+ * up also checks that the parallel import of a file cut into several chunks
+ * gives the same words as the sequential one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordListBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int wordCount;
+
+    @Param({"4"})
+    public int minLength;
+
+    @Param({"^re.*ing$"})
+    public String regex;
+
+    private String text;
+    private File file;
+    private WordList list;
+    private WordList compactList;
+    private MappedWordPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        text = BenchWords.text(wordCount, " ");
+        list = new WordList();
+        list.importFromString(text, true);
+        pool = MappedWordPool.fromWordList(list);
+        compactList = new WordList();
+        compactList.setCompact(true);
+        compactList.importFromString(text, true);
+
+        file = File.createTempFile("wordlist-bench", ".txt");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(BenchWords.text(wordCount, ","));
+        } finally {
+            writer.close();
+        }
+        checkParallelImport();
+    }
+
+    /**
+     * Imports a file of about three chunks both ways, with every line ending
+     * in a prefix of the delimiter, so that each chunk edge follows one.
+     *
+     * @throws IllegalStateException if the words differ
+     */
+    private static void checkParallelImport() throws IOException {
+        File edges = File.createTempFile("wordlist-edges", ".txt");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(edges),
+                    StandardCharsets.UTF_8);
+            try {
+                for (int i = 0; i < 1500000; i++) {
+                    writer.write("word" + i + (i % 2 == 0 ? "-->w-\n" : "--\r\n"));
+                }
+            } finally {
+                writer.close();
+            }
+            FileChannel channel = FileChannel.open(edges.toPath(), StandardOpenOption.READ);
+            try {
+                String[] parallel = new ParallelWordImporter("-->").read(channel);
+                channel.position(0);
+                WordImporter sequential = new WordImporter("-->");
+                sequential.read(channel);
+                if (!Arrays.equals(parallel, sequential.words())) {
+                    throw new IllegalStateException(
+                            "Parallel import differs from the sequential one");
+                }
+            } finally {
+                channel.close();
+            }
+        } finally {
+            edges.delete();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WordList importFromString() {
+        WordList fresh = new WordList();
+        fresh.importFromString(text, true);
+        return fresh;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WordList importFromSpecialFile() throws IOException {
+        WordList fresh = new WordList();
+        fresh.importFromSpecialFile(file.getPath(), ",", true);
+        return fresh;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String randomByLength() {
+        return list.random(minLength);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String compactRandomByLength() {
+        return compactList.random(minLength);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String mappedPoolRandom() {
+        return pool.random(minLength);
+    }
+
+    @Benchmark
+    public String randomByPattern() {
+        return list.random(regex);
+    }
+
+    @Benchmark
+    public List<String> filterWordListByPattern() {
+        return list.filterWordListByPattern(regex);
+    }
+
+    @Benchmark
+    public List<String> getWordList() {
+        return list.getWordList();
+    }
+}
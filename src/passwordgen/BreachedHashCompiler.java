@@ -0,0 +1,159 @@
+/*
+ * BreachedHashCompiler.java
+ */
+
+package passwordgen;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Offline tool which compiles a breach corpus into the file read by
+ * {@link BreachedHashes}:
+ *
+ * <pre>
+ * java -cp pwgen.jar passwordgen.BreachedHashCompiler &lt;dump&gt; &lt;output file&gt; [prefix bytes]
+ * </pre>
+ *
+ * The dump is a Have I Been Pwned download ordered by hash, one
+ * {@code HASH:COUNT} line per password with the hash in hex: 40 digits for
+ * SHA-1, 32 for NTLM. It is streamed, so it may be far larger than the heap,
+ * and must already be sorted. Prefixes default to
+ * {@value BreachedHashes#MIN_PREFIX} bytes; hashes that share one are stored
+ * once.
+ */
+public class BreachedHashCompiler {
+
+    private static final int BUFFER = 1 << 20;
+
+    /**
+     * Compiles the dump.
+     *
+     * @param prefixBytes leading hash bytes to keep, 0 for the default
+     * @return the number of records written
+     * @throws IOException if reading or writing fails, or the dump is not a
+     *         sorted list of hashes of one kind
+     */
+    public static long compile(String dump, String output, int prefixBytes) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(dump), StandardCharsets.US_ASCII), BUFFER);
+        FileChannel out = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            // the header is written last, once the count is known
+            out.position(BreachedHashes.HEADER);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+            BreachedHashes.Algorithm algorithm = null;
+            byte[] hash = new byte[20];
+            byte[] previous = null;
+            long count = 0;
+            long lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int colon = line.indexOf(':');
+                int digits = colon < 0 ? line.length() : colon;
+                if (digits == 0) {
+                    continue;
+                }
+                if (algorithm == null) {
+                    algorithm = digits == 40 ? BreachedHashes.Algorithm.SHA1
+                            : digits == 32 ? BreachedHashes.Algorithm.NTLM : null;
+                    if (algorithm == null) {
+                        throw new IOException("Line " + lineNumber + ": not a SHA-1 or NTLM hash");
+                    }
+                    if (prefixBytes == 0) {
+                        prefixBytes = BreachedHashes.MIN_PREFIX;
+                    }
+                    if (prefixBytes < BreachedHashes.MIN_PREFIX
+                            || prefixBytes > algorithm.hashBytes) {
+                        throw new IOException("Prefix bytes must be between "
+                                + BreachedHashes.MIN_PREFIX + " and " + algorithm.hashBytes);
+                    }
+                    previous = new byte[prefixBytes];
+                }
+                if (digits != 2 * algorithm.hashBytes || !parseHex(line, prefixBytes, hash)) {
+                    throw new IOException("Line " + lineNumber + ": not a " + algorithm + " hash");
+                }
+                int order = count == 0 ? 1 : compare(hash, previous, prefixBytes);
+                if (order < 0) {
+                    throw new IOException("Line " + lineNumber
+                            + ": the dump is not sorted by hash; download it ordered by hash");
+                }
+                if (order == 0) {
+                    continue;
+                }
+                if (buffer.remaining() < prefixBytes) {
+                    write(out, buffer);
+                }
+                buffer.put(hash, 0, prefixBytes);
+                System.arraycopy(hash, 0, previous, 0, prefixBytes);
+                count++;
+            }
+            write(out, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(BreachedHashes.HEADER);
+            header.putInt(BreachedHashes.MAGIC);
+            header.putInt(BreachedHashes.VERSION);
+            header.putInt(algorithm == null ? 0 : algorithm.ordinal());
+            header.putInt(prefixBytes == 0 ? BreachedHashes.MIN_PREFIX : prefixBytes);
+            header.putLong(count);
+            header.flip();
+            out.position(0);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            return count;
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static boolean parseHex(String line, int bytes, byte[] hash) {
+        for (int i = 0; i < bytes; i++) {
+            int hi = Character.digit(line.charAt(2 * i), 16);
+            int lo = Character.digit(line.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return false;
+            }
+            hash[i] = (byte) (hi << 4 | lo);
+        }
+        return true;
+    }
+
+    private static int compare(byte[] a, byte[] b, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            int d = (a[i] & 0xff) - (b[i] & 0xff);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: BreachedHashCompiler <dump> <output file> [prefix bytes]");
+            System.exit(2);
+        }
+        int prefixBytes = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        long count = compile(args[0], args[1], prefixBytes);
+        System.out.println("Compiled " + count + " hashes into " + args[1]);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * BreachedHashes.java
+ */
+
+package passwordgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Offline check of passwords against a breach corpus, such as the Have I Been
+ * Pwned dumps, compiled by {@link BreachedHashCompiler} into a sorted file of
+ * SHA-1 or NTLM hash prefixes. The file is memory-mapped in chunks, so it may
+ * be larger than the heap or 2 GB, and a lookup hashes the password and
+ * finds its prefix by interpolation search, which lands within a few records
+ * of the target on uniformly distributed hashes, then finishes with a binary
+ * search. Nothing is loaded into the heap and there is no network access.
+ *
+ * <p>The layout (all integers big-endian) is:</p>
+ *
+ * <pre>
+ * int     magic            'PWBH'
+ * int     version          1
+ * int     algorithm        0 for SHA-1 over UTF-8, 1 for NTLM (MD4 over UTF-16LE)
+ * int     prefixBytes      leading hash bytes kept per record, at least 8
+ * long    count            number of records
+ * byte[]  records          count * prefixBytes, ascending as unsigned bytes
+ * </pre>
+ *
+ * With 8-byte prefixes, a password outside a corpus of a billion hashes is
+ * reported as breached with probability about 5 * 10<sup>-11</sup>.
+ * Instances are safe to share between threads.
+ */
+public final class BreachedHashes {
+
+    /** System property naming the file checked by default. */
+    public static final String FILE_PROPERTY = "passwordgen.breachedHashes";
+
+    /**
+     * Rejected results in a row after which a caller screening against a
+     * corpus gives up, taking the configuration to have too few left.
+     */
+    static final int MAX_REJECTS = 1000;
+
+    public enum Algorithm {
+        SHA1(20), NTLM(16);
+
+        final int hashBytes;
+
+        Algorithm(int hashBytes) {
+            this.hashBytes = hashBytes;
+        }
+    }
+
+    static final int MAGIC = 0x50574248;
+    static final int VERSION = 1;
+    static final int HEADER = 24;
+    static final int MIN_PREFIX = 8;
+
+    /** Most bytes mapped per chunk; chunks hold a power of two records. */
+    private static final int CHUNK = 1 << 30;
+
+    /** Interpolation steps before the search falls back to bisection. */
+    private static final int MAX_INTERPOLATIONS = 8;
+
+    /** Ranges this small are scanned instead of searched. */
+    private static final int SCAN = 16;
+
+    private static BreachedHashes defaultHashes;
+    private static String defaultPath;
+
+    private final Algorithm algorithm;
+    private final int prefixBytes;
+    private final long count;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final ByteBuffer[] chunks;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override protected Scratch initialValue() {
+            return new Scratch(algorithm);
+        }
+    };
+
+    /** Per-thread digest and buffers, so a lookup allocates nothing. */
+    private static final class Scratch {
+
+        final MessageDigest sha1;
+        final Md4 md4;
+        byte[] input = new byte[64];
+        final byte[] hash = new byte[20];
+
+        Scratch(Algorithm algorithm) {
+            if (algorithm == Algorithm.SHA1) {
+                try {
+                    sha1 = MessageDigest.getInstance("SHA-1");
+                } catch (NoSuchAlgorithmException e) {
+                    // every Java platform must provide SHA-1
+                    throw new IllegalStateException(e);
+                }
+                md4 = null;
+            } else {
+                sha1 = null;
+                md4 = new Md4();
+            }
+        }
+    }
+
+    private BreachedHashes(Algorithm algorithm, int prefixBytes, long count, ByteBuffer[] chunks,
+                           int chunkShift) {
+        this.algorithm = algorithm;
+        this.prefixBytes = prefixBytes;
+        this.count = count;
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+    }
+
+    /**
+     * Memory-maps a compiled hash file.
+     *
+     * @throws IOException if the file cannot be read or is not a hash file
+     */
+    public static BreachedHashes open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER) {
+                throw new IOException(file + " is not a breached hash file");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            int algorithm = header.getInt(8);
+            int prefixBytes = header.getInt(12);
+            long count = header.getLong(16);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || algorithm < 0 || algorithm >= Algorithm.values().length) {
+                throw new IOException(file + " is not a breached hash file");
+            }
+            Algorithm kind = Algorithm.values()[algorithm];
+            if (prefixBytes < MIN_PREFIX || prefixBytes > kind.hashBytes || count < 0
+                    || size != HEADER + count * prefixBytes) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            // a shift and a mask locate a record, not a long division
+            int chunkShift = 31 - Integer.numberOfLeadingZeros(CHUNK / prefixBytes);
+            long perChunk = 1L << chunkShift;
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((count + perChunk - 1) / perChunk)];
+            for (int i = 0; i < chunks.length; i++) {
+                long first = i * perChunk;
+                long records = Math.min(perChunk, count - first);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER + first * prefixBytes, records * prefixBytes);
+            }
+            return new BreachedHashes(kind, prefixBytes, count, chunks, chunkShift);
+        } finally {
+            // the mappings stay valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Opens the file named by the {@value #FILE_PROPERTY} system property,
+     * once per path.
+     *
+     * @return the hashes, or null if the property is not set
+     * @throws IOException if the file cannot be opened
+     */
+    public static BreachedHashes openDefault() throws IOException {
+        String path = System.getProperty(FILE_PROPERTY);
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        synchronized (BreachedHashes.class) {
+            if (defaultHashes == null || !path.equals(defaultPath)) {
+                defaultHashes = open(new File(path));
+                defaultPath = path;
+            }
+            return defaultHashes;
+        }
+    }
+
+    public Algorithm algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the number of hashes in the file
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * @return true if the password's hash is in the corpus
+     */
+    public boolean contains(CharSequence password) {
+        Scratch s = scratch.get();
+        int n = encode(password, s);
+        return find(hash(s, n));
+    }
+
+    /**
+     * @return true if chars[from, from + length)'s hash is in the corpus
+     */
+    public boolean contains(char[] chars, int from, int length) {
+        return contains(CharBuffer.wrap(chars, from, length));
+    }
+
+    /**
+     * Encodes the password into the scratch input as the algorithm hashes
+     * it: UTF-8 for SHA-1, UTF-16LE for NTLM.
+     *
+     * @return the number of bytes
+     */
+    private int encode(CharSequence password, Scratch s) {
+        int length = password.length();
+        int max = algorithm == Algorithm.NTLM ? 2 * length : 3 * length;
+        if (s.input.length < max) {
+            s.input = new byte[Math.max(max, 2 * s.input.length)];
+        }
+        byte[] in = s.input;
+        int n = 0;
+        if (algorithm == Algorithm.NTLM) {
+            for (int i = 0; i < length; i++) {
+                char c = password.charAt(i);
+                in[n++] = (byte) c;
+                in[n++] = (byte) (c >>> 8);
+            }
+            return n;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = password.charAt(i);
+            if (c < 0x80) {
+                in[n++] = (byte) c;
+            } else if (c < 0x800) {
+                in[n++] = (byte) (0xc0 | c >>> 6);
+                in[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(password.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, password.charAt(++i));
+                in[n++] = (byte) (0xf0 | cp >>> 18);
+                in[n++] = (byte) (0x80 | (cp >>> 12 & 0x3f));
+                in[n++] = (byte) (0x80 | (cp >>> 6 & 0x3f));
+                in[n++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired, encoded as '?' like String.getBytes
+                in[n++] = '?';
+            } else {
+                in[n++] = (byte) (0xe0 | c >>> 12);
+                in[n++] = (byte) (0x80 | (c >>> 6 & 0x3f));
+                in[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return n;
+    }
+
+    private byte[] hash(Scratch s, int n) {
+        if (s.sha1 != null) {
+            s.sha1.update(s.input, 0, n);
+            try {
+                s.sha1.digest(s.hash, 0, 20);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            s.md4.digest(s.input, n, s.hash);
+        }
+        return s.hash;
+    }
+
+    /**
+     * Searches the records for the prefix of the hash.
+     */
+    boolean find(byte[] hash) {
+        long key = leading(hash);
+        long lo = 0;
+        long hi = count - 1;
+        // keys just outside [lo, hi], as fractions of the key space
+        double loKey = 0;
+        double hiKey = 1;
+        double target = fraction(key);
+        int steps = 0;
+        while (hi - lo >= SCAN) {
+            long mid;
+            if (steps++ < MAX_INTERPOLATIONS && hiKey > loKey) {
+                double at = (target - loKey) / (hiKey - loKey);
+                mid = lo + (long) (at * (hi - lo));
+                mid = Math.max(lo, Math.min(hi, mid));
+            } else {
+                mid = (lo + hi) >>> 1;
+            }
+            int c = compare(mid, key, hash);
+            if (c == 0) {
+                return true;
+            }
+            if (c < 0) {
+                lo = mid + 1;
+                loKey = fraction(keyAt(mid));
+            } else {
+                hi = mid - 1;
+                hiKey = fraction(keyAt(mid));
+            }
+        }
+        for (long i = lo; i <= hi; i++) {
+            int c = compare(i, key, hash);
+            if (c >= 0) {
+                return c == 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares record i with the hash prefix.
+     */
+    private int compare(long i, long key, byte[] hash) {
+        int c = Long.compareUnsigned(keyAt(i), key);
+        if (c != 0 || prefixBytes == MIN_PREFIX) {
+            return c;
+        }
+        ByteBuffer chunk = chunks[(int) (i >>> chunkShift)];
+        int at = ((int) i & chunkMask) * prefixBytes;
+        for (int b = MIN_PREFIX; b < prefixBytes; b++) {
+            int d = (chunk.get(at + b) & 0xff) - (hash[b] & 0xff);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    private long keyAt(long i) {
+        return chunks[(int) (i >>> chunkShift)].getLong(((int) i & chunkMask) * prefixBytes);
+    }
+
+    private static long leading(byte[] hash) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = key << 8 | (hash[i] & 0xff);
+        }
+        return key;
+    }
+
+    /**
+     * @return the unsigned key as a fraction of 2<sup>64</sup>
+     */
+    private static double fraction(long key) {
+        return (key >>> 11) * 0x1.0p-53;
+    }
+}
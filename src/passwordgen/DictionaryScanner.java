@@ -0,0 +1,259 @@
+/*
+ * DictionaryScanner.java
+ */
+
+package passwordgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over the words of a pool that have at least a
+ * minimum length, for rejecting passwords that contain a dictionary word.
+ * Matching ignores case, so "xPaSSwoRd7" contains "password".
+ *
+ * <p>Compiling builds the trie of the words, computes the failure links
+ * breadth first and folds them into a complete transition table, so a scan
+ * is one table lookup per character with no backtracking. Since only the
+ * presence of a word matters, a word that extends a shorter one is never
+ * added, and every state in which some word ends is merged into one
+ * absorbing match state that a scan stops at. The table is a flat int array
+ * indexed by state and character class, with each state stored premultiplied
+ * by the number of classes; characters found in no word share class 0.</p>
+ *
+ * <p>A scanner is immutable and may be shared between threads.</p>
+ */
+public final class DictionaryScanner {
+
+    /** Minimum lengths up to this are cached per pool. */
+    private static final int MAX_CACHED = 32;
+
+    private final int minLength;
+    private final int words;
+    private final int width;
+
+    /** Character class of every char, after folding case. */
+    private final char[] classes;
+
+    /** Next state by state + class; states are row offsets. */
+    private final int[] next;
+
+    /** The absorbing state reached when a word ends. */
+    private final int match;
+
+    private DictionaryScanner(int minLength, int words, int width, char[] classes, int[] next,
+                              int match) {
+        this.minLength = minLength;
+        this.words = words;
+        this.width = width;
+        this.classes = classes;
+        this.next = next;
+        this.match = match;
+    }
+
+    /**
+     * @return the scanner for the pool's words of at least minLength
+     *         characters, built on first use
+     * @throws IllegalArgumentException if minLength is not positive
+     */
+    public static DictionaryScanner of(MappedWordPool pool, int minLength) {
+        return pool.dictionaries().get(minLength);
+    }
+
+    /**
+     * @return the scanner for the list's current words of at least
+     *         minLength characters, built on first use after each change to
+     *         the list
+     * @throws IllegalArgumentException if minLength is not positive
+     */
+    public static DictionaryScanner of(WordList list, int minLength) {
+        return list.dictionaries().get(minLength);
+    }
+
+    /**
+     * Compiles the words of at least minLength characters.
+     *
+     * @throws IllegalArgumentException if minLength is not positive
+     */
+    static DictionaryScanner compile(WordSource source, int minLength) {
+        if (minLength <= 0) {
+            throw new IllegalArgumentException("Minimum word length should be greater than 0.");
+        }
+        List<String> kept = new ArrayList<String>();
+        for (int i = 0; i < source.size(); i++) {
+            if (source.length(i) >= minLength) {
+                kept.add(source.word(i));
+            }
+        }
+        // shorter words first, so that any word extending one is skipped
+        String[] words = kept.toArray(new String[kept.size()]);
+        Arrays.sort(words, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return a.length() - b.length();
+            }
+        });
+
+        char[] folded = new char[Character.MAX_VALUE + 1];
+        int width = 1;
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                char c = Character.toLowerCase(word.charAt(i));
+                if (folded[c] == 0) {
+                    folded[c] = (char) width++;
+                }
+            }
+        }
+        char[] classes = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            classes[c] = folded[Character.toLowerCase((char) c)];
+        }
+
+        // trie; 0 is the root and, below it, no child
+        int[] trie = new int[1024 * width];
+        boolean[] terminal = new boolean[1024];
+        int states = 1;
+        int added = 0;
+        for (String word : words) {
+            int s = 0;
+            int i = 0;
+            for (; i < word.length() && !terminal[s]; i++) {
+                int at = s * width + classes[word.charAt(i)];
+                if (trie[at] == 0) {
+                    if (states == terminal.length) {
+                        trie = Arrays.copyOf(trie, 2 * states * width);
+                        terminal = Arrays.copyOf(terminal, 2 * states);
+                    }
+                    trie[at] = states++;
+                }
+                s = trie[at];
+            }
+            if (!terminal[s]) {
+                terminal[s] = true;
+                added++;
+            }
+        }
+
+        // breadth first: failure links, and missing transitions taken from
+        // the failure state, which is shallower and so already complete
+        int[] fail = new int[states];
+        int[] order = new int[states];
+        int tail = 1;
+        for (int head = 0; head < tail; head++) {
+            int u = order[head];
+            int f = fail[u];
+            for (int a = 0; a < width; a++) {
+                int at = u * width + a;
+                int v = trie[at];
+                if (v == 0) {
+                    trie[at] = u == 0 ? 0 : trie[f * width + a];
+                    continue;
+                }
+                if (terminal[v]) {
+                    continue;
+                }
+                fail[v] = u == 0 ? 0 : trie[f * width + a];
+                if (terminal[fail[v]]) {
+                    // a shorter word ends here too
+                    terminal[v] = true;
+                } else {
+                    order[tail++] = v;
+                }
+            }
+        }
+
+        int[] id = new int[states];
+        for (int k = 0; k < tail; k++) {
+            id[order[k]] = k * width;
+        }
+        int match = tail * width;
+        int[] next = new int[tail * width];
+        for (int k = 0; k < tail; k++) {
+            int row = order[k] * width;
+            for (int a = 0; a < width; a++) {
+                int t = trie[row + a];
+                next[k * width + a] = terminal[t] ? match : id[t];
+            }
+        }
+        return new DictionaryScanner(minLength, added, width, classes, next, match);
+    }
+
+    /**
+     * @return true if chars[from, from + length) contains a word
+     */
+    public boolean containsWord(char[] chars, int from, int length) {
+        int[] next = this.next;
+        char[] classes = this.classes;
+        int s = 0;
+        for (int i = from, end = from + length; i < end; i++) {
+            s = next[s + classes[chars[i]]];
+            if (s == match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the text contains a word
+     */
+    public boolean containsWord(CharSequence text) {
+        int s = 0;
+        for (int i = 0; i < text.length(); i++) {
+            s = next[s + classes[text.charAt(i)]];
+            if (s == match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int minLength() {
+        return minLength;
+    }
+
+    /**
+     * @return the number of words in the automaton, not counting those
+     *         that contain a shorter one as a prefix
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * @return the number of states other than the match state
+     */
+    public int states() {
+        return match / width;
+    }
+
+    /**
+     * Scanners over one word source by minimum length, each built on first
+     * use.
+     */
+    static final class Cache {
+
+        private final WordSource source;
+
+        /** Racing builders produce equal scanners and either may win; the
+         *  final fields of a scanner make reading it without a lock safe. */
+        private final DictionaryScanner[] byLength = new DictionaryScanner[MAX_CACHED + 1];
+
+        Cache(WordSource source) {
+            this.source = source;
+        }
+
+        DictionaryScanner get(int minLength) {
+            if (minLength <= 0 || minLength > MAX_CACHED) {
+                return compile(source, minLength);
+            }
+            DictionaryScanner scanner = byLength[minLength];
+            if (scanner == null) {
+                scanner = compile(source, minLength);
+                byLength[minLength] = scanner;
+            }
+            return scanner;
+        }
+    }
+}
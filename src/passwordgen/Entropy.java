@@ -0,0 +1,267 @@
+/*
+ * Entropy.java
+ */
+
+package passwordgen;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bits of entropy of one generated password or passphrase for a given
+ * configuration, so the front ends can show the strength of what they hand out
+ * and refuse configurations below a minimum.
+ *
+ * <p>A password of length L with U upper case, N numeric and S special
+ * characters and l = L - U - N - S lower case ones is each class filled
+ * uniformly from its alphabet and then uniformly shuffled. When the alphabets
+ * in use are disjoint every password determines where each class went, so its
+ * entropy is exactly log2(L! / (U! N! S! l!)) plus the entropy of the
+ * characters themselves. If the allowed specials overlap the letters or digits
+ * the arrangement term is left out, which leaves a lower bound.</p>
+ *
+ * <p>A passphrase of k words is k independent draws from the words of at least
+ * the minimum length, k times the Shannon entropy of one draw, which counts a
+ * word listed twice once with twice the weight. This assumes the separator
+ * does not occur inside words. With an empty separator different draws can
+ * run together into the same text, so the figure is then only an upper
+ * bound.</p>
+ *
+ * <p>Results are cached per configuration, and the word tables per pool, so
+ * the cost is paid once rather than per generated item.</p>
+ */
+public final class Entropy {
+
+    /** System property giving the default minimum bits a configuration needs. */
+    public static final String MIN_BITS_PROPERTY = "passwordgen.minBits";
+
+    /** Number of password configurations whose entropy is kept. */
+    private static final int CACHE_SIZE = 256;
+
+    private static final double LN2 = Math.log(2);
+
+    private static final Map<String, Entropy> PASSWORDS =
+            new LinkedHashMap<String, Entropy>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<String, Entropy> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final double bits;
+    private final boolean exact;
+
+    /** How bits relates to the true entropy when it is not exact. */
+    private final String bound;
+
+    private Entropy(double bits, boolean exact) {
+        this(bits, exact, "at least ");
+    }
+
+    private Entropy(double bits, boolean exact, String bound) {
+        this.bits = bits;
+        this.exact = exact;
+        this.bound = bound;
+    }
+
+    /**
+     * @return the bits of entropy of one result
+     */
+    public double bits() {
+        return bits;
+    }
+
+    /**
+     * @return false if {@link #bits()} is only a bound: a lower one for a
+     *         password whose alphabets overlap, an upper one for a passphrase
+     *         without a separator
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Checks the configuration against a minimum-bits policy.
+     *
+     * @param minBits the least acceptable entropy
+     * @throws IllegalArgumentException if this falls short of it
+     */
+    public void require(double minBits) {
+        if (bits < minBits) {
+            throw new IllegalArgumentException(String.format(
+                    "This configuration gives %s of entropy, less than the required %.1f.",
+                    this, minBits));
+        }
+    }
+
+    /**
+     * @return the minimum bits from the {@value #MIN_BITS_PROPERTY} system
+     *         property, or 0 if it is not set
+     */
+    public static double defaultMinimumBits() {
+        String value = System.getProperty(MIN_BITS_PROPERTY);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + MIN_BITS_PROPERTY + ": " + value);
+        }
+    }
+
+    @Override public String toString() {
+        return String.format(exact ? "%.1f bits" : bound + "%.1f bits", bits);
+    }
+
+    /**
+     * Entropy of one password from {@link PasswordEngine} with the given
+     * configuration.
+     */
+    public static Entropy ofPassword(int length, int numUpper, int numNumeric, int numSpecial,
+                                     String specials) {
+        String key = length + "/" + numUpper + "/" + numNumeric + "/" + numSpecial + "/" + specials;
+        synchronized (PASSWORDS) {
+            Entropy cached = PASSWORDS.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        int numLower = length - numUpper - numNumeric - numSpecial;
+        String upper = PasswordEngine.LOWER.toUpperCase();
+        String used = (numLower > 0 ? PasswordEngine.LOWER : "")
+                + (numUpper > 0 ? upper : "")
+                + (numNumeric > 0 ? PasswordEngine.NUMERIC : "");
+        boolean exact = true;
+        if (numSpecial > 0) {
+            for (int i = 0; i < specials.length() && exact; i++) {
+                exact = used.indexOf(specials.charAt(i)) < 0;
+            }
+        }
+
+        double bits = numLower * alphabetBits(PasswordEngine.LOWER)
+                + numUpper * alphabetBits(upper)
+                + numNumeric * alphabetBits(PasswordEngine.NUMERIC)
+                + (numSpecial > 0 ? numSpecial * alphabetBits(specials) : 0);
+        if (exact) {
+            bits += log2Factorial(length) - log2Factorial(numLower) - log2Factorial(numUpper)
+                    - log2Factorial(numNumeric) - log2Factorial(numSpecial);
+        }
+
+        Entropy entropy = new Entropy(bits, exact);
+        synchronized (PASSWORDS) {
+            PASSWORDS.put(key, entropy);
+        }
+        return entropy;
+    }
+
+    /**
+     * Entropy of one of count * 2<sup>exponent</sup> equally likely results,
+     * such as the passwords of a {@link PasswordPolicy}, whose count may be
+     * far beyond the range of a double.
+     */
+    static Entropy ofCount(double count, int exponent) {
+        return new Entropy(log2(count) + exponent, true);
+    }
+
+    /**
+     * Entropy of one passphrase of the given number of words drawn from the
+     * pool's words of at least minLength characters and joined by separator.
+     */
+    public static Entropy ofPassphrase(MappedWordPool pool, int words, int minLength,
+                                       String separator) {
+        return ofPassphrase(pool.wordBits(), words, minLength, separator);
+    }
+
+    /**
+     * Entropy of one passphrase of the given number of words drawn from the
+     * list's words of at least minLength characters and joined by separator.
+     */
+    public static Entropy ofPassphrase(WordList list, int words, int minLength,
+                                       String separator) {
+        return ofPassphrase(list.wordBits(), words, minLength, separator);
+    }
+
+    private static Entropy ofPassphrase(double[] wordBits, int words, int minLength,
+                                        String separator) {
+        int m = Math.min(Math.max(minLength, 0), wordBits.length - 1);
+        // words run together can spell the same text in more than one way
+        boolean exact = words < 2 || separator.length() > 0;
+        return new Entropy(words * wordBits[m], exact, "at most ");
+    }
+
+    /**
+     * Computes, for every minimum length m up to the longest word plus one,
+     * the Shannon entropy in bits of a uniform draw among the words of at
+     * least m characters.
+     */
+    static double[] wordBits(WordSource words) {
+        Map<String, int[]> counts = new HashMap<String, int[]>();
+        int maxLength = 0;
+        for (int i = 0, n = words.size(); i < n; i++) {
+            String word = words.word(i);
+            int[] count = counts.get(word);
+            if (count == null) {
+                counts.put(word, new int[] { 1 });
+                maxLength = Math.max(maxLength, word.length());
+            } else {
+                count[0]++;
+            }
+        }
+
+        // per length: number of draws and sum of c log2 c over distinct words
+        double[] total = new double[maxLength + 1];
+        double[] weighted = new double[maxLength + 1];
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            int length = entry.getKey().length();
+            int c = entry.getValue()[0];
+            total[length] += c;
+            weighted[length] += c * log2(c);
+        }
+
+        double[] bits = new double[maxLength + 2];
+        double n = 0;
+        double s = 0;
+        for (int m = maxLength; m >= 0; m--) {
+            n += total[m];
+            s += weighted[m];
+            bits[m] = n == 0 ? 0 : log2(n) - s / n;
+        }
+        return bits;
+    }
+
+    /**
+     * Shannon entropy of one uniform pick from the table; repeated characters
+     * weigh more.
+     */
+    private static double alphabetBits(String table) {
+        Map<Character, int[]> counts = new HashMap<Character, int[]>();
+        for (int i = 0; i < table.length(); i++) {
+            int[] count = counts.get(table.charAt(i));
+            if (count == null) {
+                counts.put(table.charAt(i), new int[] { 1 });
+            } else {
+                count[0]++;
+            }
+        }
+        double n = table.length();
+        double bits = log2(n);
+        for (int[] count : counts.values()) {
+            bits -= count[0] / n * log2(count[0]);
+        }
+        return bits;
+    }
+
+    private static double log2Factorial(int n) {
+        double sum = 0;
+        for (int i = 2; i <= n; i++) {
+            sum += Math.log(i);
+        }
+        return sum / LN2;
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / LN2;
+    }
+}
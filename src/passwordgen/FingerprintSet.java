@@ -0,0 +1,89 @@
+/*
+ * FingerprintSet.java
+ */
+
+package passwordgen;
+
+/**
+ * Open-addressing hash set of 64-bit word fingerprints, used to drop
+ * duplicates as words are added. Only the fingerprints are stored, 8 bytes a
+ * slot in one long[], so a membership test is a hash and a short linear probe
+ * with no String comparison and no per-word node. Two distinct words share a
+ * fingerprint with probability about n&sup2;/2<sup>65</sup>, roughly one in
+ * three hundred thousand for ten million words.
+ */
+final class FingerprintSet {
+
+    /** Marks an empty slot; a word hashing to it is stored as EMPTY + 1. */
+    private static final long EMPTY = 0L;
+
+    private long[] slots;
+    private int size;
+
+    FingerprintSet(int expected) {
+        int capacity = 16;
+        while (capacity * 2 / 3 < expected) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+    }
+
+    /**
+     * Adds the word's fingerprint.
+     *
+     * @return false if the word, or a word with the same fingerprint, was
+     *         already present
+     */
+    boolean add(String word) {
+        if (size + 1 > slots.length * 2 / 3) {
+            grow();
+        }
+        return insert(slots, fingerprint(word));
+    }
+
+    int size() {
+        return size;
+    }
+
+    private boolean insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int i = (int) fingerprint & mask;
+        while (table[i] != EMPTY) {
+            if (table[i] == fingerprint) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = fingerprint;
+        size++;
+        return true;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        size = 0;
+        for (long fingerprint : old) {
+            if (fingerprint != EMPTY) {
+                insert(slots, fingerprint);
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units followed by the MurmurHash3
+     * finalizer, so the low bits used for the slot index are well mixed.
+     */
+    static long fingerprint(String word) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = word.length(); i < n; i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? EMPTY + 1 : h;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * FlightEvents.java
+ */
+
+package passwordgen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for word list operations and generation, so a
+ * recording shows individual slow calls next to GC pauses and monitor waits
+ * on the same thread. Long operations (imports, exports, filters) are
+ * recorded whenever their event is enabled; per-item ones (passwords,
+ * passphrase calls, random draws) default to a 1 ms threshold, since
+ * recording each would flood the file.
+ *
+ * <p>Callers go through the begin and end methods here. A begin method
+ * returns null when the runtime was linked without the jdk.jfr module, so
+ * the event classes are never loaded there; without a recording an event is
+ * a short-lived object whose begin, end and commit are empty.</p>
+ */
+final class FlightEvents {
+
+    private static final boolean AVAILABLE = available();
+
+    /** Outcome of an operation that completed. */
+    static final String OK = "ok";
+
+    /** Outcome of an operation that threw. */
+    static final String FAILED = "failed";
+
+    private FlightEvents() {
+    }
+
+    @Name("passwordgen.WordListImport")
+    @Label("Word List Import")
+    @Category({ "Password Generator", "Word List" })
+    static final class ImportEvent extends Event {
+
+        @Label("Source")
+        @Description("File path, or how the words were passed in")
+        String source;
+
+        @Label("Delimiter")
+        String delimiter;
+
+        @Label("Clear List")
+        boolean clearList;
+
+        @Label("Parallel")
+        boolean parallel;
+
+        @Label("Words Read")
+        long words;
+
+        @Label("List Size")
+        @Description("Words in the list afterwards")
+        int listSize;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("passwordgen.WordListExport")
+    @Label("Word List Export")
+    @Category({ "Password Generator", "Word List" })
+    static final class ExportEvent extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Delimiter")
+        String delimiter;
+
+        @Label("Append")
+        boolean append;
+
+        @Label("Atomic")
+        boolean atomic;
+
+        @Label("List Size")
+        int listSize;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("passwordgen.WordListFilter")
+    @Label("Word List Filter")
+    @Category({ "Password Generator", "Word List" })
+    static final class FilterEvent extends Event {
+
+        @Label("Filter")
+        @Description("length, minLength or pattern")
+        String filter;
+
+        @Label("Length")
+        int length;
+
+        @Label("Regex")
+        String regex;
+
+        @Label("List Size")
+        int listSize;
+
+        @Label("Matches")
+        int matches;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("passwordgen.RandomWord")
+    @Label("Random Word")
+    @Category({ "Password Generator", "Word List" })
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class RandomWordEvent extends Event {
+
+        @Label("Source")
+        @Description("WordList or MappedWordPool")
+        String source;
+
+        @Label("Minimum Length")
+        int minLength;
+
+        @Label("Regex")
+        String regex;
+
+        @Label("List Size")
+        int listSize;
+
+        @Label("Outcome")
+        @Description("ok, none if no word qualified, or failed")
+        String outcome;
+    }
+
+    @Name("passwordgen.Password")
+    @Label("Password Generation")
+    @Category({ "Password Generator", "Generation" })
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class PasswordEvent extends Event {
+
+        @Label("Generator")
+        @Description("engine, or the rules of a compiled policy")
+        String generator;
+
+        @Label("Length")
+        int length;
+
+        @Label("Uppercase")
+        int upper;
+
+        @Label("Numeric")
+        int numeric;
+
+        @Label("Special")
+        int special;
+    }
+
+    @Name("passwordgen.Passphrase")
+    @Label("Passphrase Generation")
+    @Category({ "Password Generator", "Generation" })
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class PassphraseEvent extends Event {
+
+        @Label("Passphrases")
+        long count;
+
+        @Label("Words")
+        int words;
+
+        @Label("Minimum Length")
+        int minLength;
+
+        @Label("Separator")
+        String separator;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    static ImportEvent beginImport() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ImportEvent event = new ImportEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param words words read, or -1 if the import threw
+     */
+    static void endImport(ImportEvent event, String source, String delimiter,
+            boolean clearList, boolean parallel, long words, int listSize) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.delimiter = delimiter;
+            event.clearList = clearList;
+            event.parallel = parallel;
+            event.words = Math.max(0, words);
+            event.listSize = listSize;
+            event.outcome = words < 0 ? FAILED : OK;
+            event.commit();
+        }
+    }
+
+    static ExportEvent beginExport() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ExportEvent event = new ExportEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endExport(ExportEvent event, String path, String delimiter, boolean append,
+            boolean atomic, int listSize, boolean done) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.delimiter = delimiter;
+            event.append = append;
+            event.atomic = atomic;
+            event.listSize = listSize;
+            event.outcome = done ? OK : FAILED;
+            event.commit();
+        }
+    }
+
+    static FilterEvent beginFilter() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        FilterEvent event = new FilterEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param matches words kept, or -1 if the filter threw
+     */
+    static void endFilter(FilterEvent event, String filter, int length, String regex,
+            int listSize, int matches) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.filter = filter;
+            event.length = length;
+            event.regex = regex;
+            event.listSize = listSize;
+            event.matches = Math.max(0, matches);
+            event.outcome = matches < 0 ? FAILED : OK;
+            event.commit();
+        }
+    }
+
+    static RandomWordEvent beginRandomWord() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        RandomWordEvent event = new RandomWordEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param outcome {@link #OK}, {@code "none"} or {@link #FAILED}
+     */
+    static void endRandomWord(RandomWordEvent event, String source, int minLength, String regex,
+            int listSize, String outcome) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.minLength = minLength;
+            event.regex = regex;
+            event.listSize = listSize;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    static PasswordEvent beginPassword() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        PasswordEvent event = new PasswordEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endPassword(PasswordEvent event, String generator, int length, int upper,
+            int numeric, int special) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.generator = generator;
+            event.length = length;
+            event.upper = upper;
+            event.numeric = numeric;
+            event.special = special;
+            event.commit();
+        }
+    }
+
+    static PassphraseEvent beginPassphrase() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        PassphraseEvent event = new PassphraseEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endPassphrase(PassphraseEvent event, long count, int words, int minLength,
+            String separator, boolean done) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.count = count;
+            event.words = words;
+            event.minLength = minLength;
+            event.separator = separator;
+            event.outcome = done ? OK : FAILED;
+            event.commit();
+        }
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * LatencyHistogram.java
+ */
+
+package passwordgen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets: exact below
+ * 16 ns, then eight buckets per power of two, so a reported percentile is
+ * within 12.5% of the true value across the whole long range.
+ *
+ * <p>Recording is lock-free. Threads take stripes in turn as they first
+ * record, so the first threads up to the number of stripes each get their
+ * own, and later ones share. A stripe is an AtomicLongArray of bucket counts
+ * plus the call count, sum and maximum, created on first use; a recording on
+ * an unshared stripe is two uncontended atomic adds. Reading
+ * merges the stripes, so a snapshot taken while threads record may miss
+ * their latest values but never blocks them.</p>
+ *
+ * <p>Operations too short to afford two clock reads each use
+ * {@link #start()} and {@link #stop(long)}, which count every call but time
+ * only one in {@value #SAMPLE}, so the untimed ones cost one atomic add.</p>
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+
+    /** Bucket count: LINEAR exact values, then SUB per exponent 4 to 62. */
+    static final int BUCKETS = LINEAR + (63 - 4) * SUB;
+
+    /** One call in SAMPLE per stripe is timed by start(). */
+    static final int SAMPLE = 64;
+
+    /** start() value for a call that is not timed. */
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final int SUM = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+    private static final int CALLS = BUCKETS + 2;
+
+    private static final int STRIPES = stripeCount();
+
+    private static final AtomicInteger NEXT_STRIPE = new AtomicInteger();
+
+    /** Stripe index of each thread, the same in every histogram. */
+    private static final ThreadLocal<Integer> STRIPE = new ThreadLocal<Integer>() {
+        @Override protected Integer initialValue() {
+            return NEXT_STRIPE.getAndIncrement() & (STRIPES - 1);
+        }
+    };
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes =
+            new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+
+    /**
+     * Counts one call and records its duration; negative ones count as zero.
+     */
+    void record(long nanos) {
+        AtomicLongArray stripe = stripe();
+        stripe.incrementAndGet(CALLS);
+        add(stripe, nanos);
+    }
+
+    /**
+     * Counts one call and decides whether to time it.
+     *
+     * @return the value to pass to {@link #stop(long)} when the call ends
+     */
+    long start() {
+        if ((stripe().incrementAndGet(CALLS) & (SAMPLE - 1)) != 0) {
+            return NOT_TIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a call if {@link #start()} chose to time it.
+     */
+    void stop(long start) {
+        if (start != NOT_TIMED) {
+            add(stripe(), System.nanoTime() - start);
+        }
+    }
+
+    private static void add(AtomicLongArray stripe, long nanos) {
+        long value = Math.max(0, nanos);
+        stripe.incrementAndGet(bucket(value));
+        stripe.addAndGet(SUM, value);
+        long max = stripe.get(MAX);
+        while (value > max && !stripe.compareAndSet(MAX, max, value)) {
+            max = stripe.get(MAX);
+        }
+    }
+
+    /**
+     * @return the number of calls counted, timed or not
+     */
+    long calls() {
+        long calls = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe != null) {
+                calls += stripe.get(CALLS);
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * Merges the stripes into a summary of the timed calls.
+     */
+    LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int b = 0; b < BUCKETS; b++) {
+                long c = stripe.get(b);
+                counts[b] += c;
+                count += c;
+            }
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new LatencySnapshot(count, count == 0 ? 0 : (double) sum / count,
+                percentile(counts, count, max, 0.5), percentile(counts, count, max, 0.9),
+                percentile(counts, count, max, 0.99), percentile(counts, count, max, 0.999), max);
+    }
+
+    /**
+     * Drops everything recorded so far. Recordings made meanwhile may be
+     * kept or dropped.
+     */
+    void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            stripes.set(s, null);
+        }
+    }
+
+    /**
+     * @return the upper end of the bucket holding the q-quantile, at most
+     *         the maximum recorded
+     */
+    private static long percentile(long[] counts, long count, long max, double q) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return Math.min(max, highest(b));
+            }
+        }
+        return max;
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return LINEAR + (exponent - 4) * SUB + sub;
+    }
+
+    /**
+     * @return the largest value that falls in the bucket
+     */
+    static long highest(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB + 4;
+        long sub = (bucket - LINEAR) % SUB;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+
+    private AtomicLongArray stripe() {
+        int index = STRIPE.get();
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 3));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    /**
+     * @return four stripes per core, a power of two between 4 and 64
+     */
+    private static int stripeCount() {
+        int wanted = 4 * Runtime.getRuntime().availableProcessors();
+        int n = 4;
+        while (n < wanted && n < 64) {
+            n <<= 1;
+        }
+        return n;
+    }
+}
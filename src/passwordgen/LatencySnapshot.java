@@ -0,0 +1,71 @@
+/*
+ * LatencySnapshot.java
+ */
+
+package passwordgen;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a latency histogram at one point in time, in nanoseconds.
+ * Percentiles are the upper bounds of their buckets, within 12.5% of the
+ * exact values. Over JMX it appears as composite data.
+ */
+public final class LatencySnapshot {
+
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "p999", "max" })
+    public LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999,
+                           long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of timed calls summarized
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override public String toString() {
+        return String.format("count=%d mean=%.0f p50=%d p90=%d p99=%d p99.9=%d max=%d ns",
+                count, mean, p50, p90, p99, p999, max);
+    }
+}
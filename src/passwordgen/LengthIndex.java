@@ -0,0 +1,208 @@
+/*
+ * LengthIndex.java
+ */
+
+package passwordgen;
+
+/**
+ * Read-only view of a word list grouped by word length. Words are kept in
+ * ascending length order (original order within each length) together with a
+ * prefix table, so "a word of at least k characters" is one bounded random
+ * index into a contiguous range instead of a filtered copy of the list. Over
+ * packed words the index holds positions rather than Strings, and only the
+ * word drawn is decoded.
+ */
+final class LengthIndex implements WordSource {
+
+    /** The words, grouped by ascending length; null over packed words. */
+    private final String[] words;
+
+    /** Positions in packed, grouped by ascending length of their words. */
+    private final PackedWords packed;
+    private final int[] slots;
+
+    /** start[k] is the first slot holding a word of length >= k. */
+    private final int[] start;
+
+    private LengthIndex(String[] words, int[] start) {
+        this.words = words;
+        this.packed = null;
+        this.slots = null;
+        this.start = start;
+    }
+
+    /**
+     * Indexes all the packed words.
+     */
+    LengthIndex(PackedWords source) {
+        int size = source.size();
+        int[] lengths = new int[size];
+        int maxLength = 0;
+        for (int i = 0; i < size; i++) {
+            lengths[i] = source.length(i);
+            maxLength = Math.max(maxLength, lengths[i]);
+        }
+        start = startTable(lengths, size, maxLength);
+
+        words = null;
+        packed = source;
+        slots = new int[size];
+        int[] fill = new int[maxLength + 1];
+        System.arraycopy(start, 0, fill, 0, fill.length);
+        for (int i = 0; i < size; i++) {
+            slots[fill[lengths[i]]++] = i;
+        }
+    }
+
+    /**
+     * Indexes words which are already in ascending length order, such as a
+     * list just sorted by length. The array is shared, not copied.
+     */
+    static LengthIndex ofSorted(String[] words) {
+        int maxLength = words.length == 0 ? 0 : words[words.length - 1].length();
+        int[] lengths = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            lengths[i] = words[i].length();
+        }
+        return new LengthIndex(words, startTable(lengths, words.length, maxLength));
+    }
+
+    /**
+     * Indexes source[0, size).
+     */
+    LengthIndex(String[] source, int size) {
+        int[] lengths = new int[size];
+        int maxLength = 0;
+        for (int i = 0; i < size; i++) {
+            lengths[i] = source[i].length();
+            maxLength = Math.max(maxLength, lengths[i]);
+        }
+        start = startTable(lengths, size, maxLength);
+
+        packed = null;
+        slots = null;
+        words = new String[size];
+        int[] fill = new int[maxLength + 1];
+        System.arraycopy(start, 0, fill, 0, fill.length);
+        for (int i = 0; i < size; i++) {
+            words[fill[lengths[i]]++] = source[i];
+        }
+    }
+
+    /**
+     * Builds the table shared by the length-grouped word stores: start[k] is
+     * the first slot holding a word of length &gt;= k once lengths[0, size)
+     * are grouped by ascending length, for k up to maxLength + 1.
+     */
+    static int[] startTable(int[] lengths, int size, int maxLength) {
+        int[] start = new int[maxLength + 2];
+        for (int i = 0; i < size; i++) {
+            start[lengths[i] + 1]++;
+        }
+        for (int k = 1; k < start.length; k++) {
+            start[k] += start[k - 1];
+        }
+        return start;
+    }
+
+    /**
+     * @return the number of indexed words
+     */
+    public int size() {
+        return start[start.length - 1];
+    }
+
+    /**
+     * @return the length of the longest indexed word
+     */
+    int maxLength() {
+        return start.length - 2;
+    }
+
+    /**
+     * @param minLength minimum word length
+     * @return the number of words with at least minLength characters
+     */
+    int countAtLeast(int minLength) {
+        return size() - firstSlot(minLength);
+    }
+
+    /**
+     * Returns the word at the given position of the "length >= minLength"
+     * range, 0 &lt;= position &lt; countAtLeast(minLength).
+     */
+    String atLeast(int minLength, int position) {
+        return word(firstSlot(minLength) + position);
+    }
+
+    /**
+     * Returns a random word with at least minLength characters, or null if
+     * there is none.
+     */
+    String random(int minLength) {
+        int from = firstSlot(minLength);
+        int count = size() - from;
+        if (count == 0) {
+            return null;
+        }
+        return word(from + WordList.myRandom(count));
+    }
+
+    /**
+     * Returns the first word (in list order) of exactly the given length, or
+     * null if there is none.
+     */
+    String first(int length) {
+        if (length < 0 || length > maxLength()) {
+            return null;
+        }
+        int from = start[length];
+        return from < start[length + 1] ? word(from) : null;
+    }
+
+    /**
+     * Returns the word in the given slot; slots are ordered by ascending
+     * word length.
+     */
+    public String word(int slot) {
+        return words != null ? words[slot] : packed.word(slots[slot]);
+    }
+
+    public int length(int slot) {
+        return words != null ? words[slot].length() : packed.length(slots[slot]);
+    }
+
+    private int firstSlot(int minLength) {
+        return firstSlot(start, minLength);
+    }
+
+    /**
+     * @return the first slot holding a word of at least minLength
+     *         characters, or the word count if there is none
+     */
+    static int firstSlot(int[] start, int minLength) {
+        if (minLength <= 0) {
+            return 0;
+        }
+        return start[Math.min(minLength, start.length - 1)];
+    }
+
+    /**
+     * @return the length of the word in the given slot, read from the start
+     *         table without touching the word
+     */
+    static int lengthAt(int[] start, int slot) {
+        // the largest k with start[k] <= slot
+        int low = 0;
+        int high = start.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (start[mid] <= slot) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * MappedWordPool.java
+ */
+
+package passwordgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only word pool backed by a file produced by {@link WordPoolCompiler}.
+ * The file is memory-mapped, so opening it costs a header check and words are
+ * decoded one at a time, only when drawn. Processes mapping the same file share
+ * its page-cache copy.
+ */
+public class MappedWordPool implements WordSource {
+
+    /** Name of the compiled pool on the classpath. */
+    public static final String RESOURCE = "/passwordgen/resources/wordPool.bin";
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int maxLength;
+
+    /** The lengthStart table, see {@link LengthIndex#startTable}. */
+    private final int[] start;
+
+    private final int offsetsPos;
+    private final int blobPos;
+
+    /** Entropy table for {@link Entropy}, built on first use. */
+    private volatile double[] wordBits;
+
+    /** Generator over the words, built on first use. */
+    private volatile PassphraseGenerator passphrases;
+
+    /** Dictionary scanners over the words. */
+    private final DictionaryScanner.Cache dictionaries = new DictionaryScanner.Cache(this);
+
+    MappedWordPool(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < 16 || buffer.getInt(0) != WordPoolCompiler.MAGIC) {
+            throw new IOException("Not a compiled word pool");
+        }
+        if (buffer.getInt(4) != WordPoolCompiler.VERSION) {
+            throw new IOException("Unsupported word pool version " + buffer.getInt(4));
+        }
+        count = buffer.getInt(8);
+        maxLength = buffer.getInt(12);
+        offsetsPos = 16 + 4 * (maxLength + 2);
+        blobPos = offsetsPos + 4 * (count + 1);
+        if (maxLength < 0 || count < 0 || blobPos > buffer.capacity()
+                || blobPos + buffer.getInt(offsetsPos + 4 * count) > buffer.capacity()) {
+            throw new IOException("Truncated word pool");
+        }
+        start = new int[maxLength + 2];
+        for (int k = 0; k < start.length; k++) {
+            start[k] = buffer.getInt(16 + 4 * k);
+        }
+    }
+
+    /**
+     * Memory-maps a compiled word pool file.
+     *
+     * @param file the file to map
+     * @return the pool
+     * @throws IOException if the file cannot be read or is not a word pool
+     */
+    public static MappedWordPool open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new MappedWordPool(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Opens the compiled pool from the classpath. When the application runs
+     * from a directory the file is mapped; inside a jar it cannot be, so it is
+     * read into a direct buffer once.
+     *
+     * @return the pool, or null if the build did not produce one
+     * @throws IOException if the resource exists but cannot be read
+     */
+    public static MappedWordPool openResource() throws IOException {
+        URL url = MappedWordPool.class.getResource(RESOURCE);
+        if (url == null) {
+            return null;
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return open(new File(url.toURI()));
+            } catch (URISyntaxException e) {
+                // fall through and read it as a stream
+            }
+        }
+
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+            byte[] chunk = new byte[1 << 16];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                bytes.write(chunk, 0, n);
+            }
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.size());
+            direct.put(bytes.toByteArray());
+            direct.flip();
+            return new MappedWordPool(direct);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens the compiled pool from the classpath, or builds one from the
+     * {@link WordPoolResource} word list when the build did not compile it.
+     * Neither path touches the Swing Application Framework.
+     *
+     * @return the pool
+     * @throws IOException if neither source can be read
+     */
+    public static MappedWordPool openDefault() throws IOException {
+        MappedWordPool pool = openResource();
+        if (pool != null) {
+            return pool;
+        }
+
+        return fromWordList(WordPoolResource.read());
+    }
+
+    /**
+     * Builds an in-memory pool from a word list, for when no compiled pool is
+     * available.
+     *
+     * @param words the words to pool
+     * @return the pool
+     */
+    public static MappedWordPool fromWordList(WordList words) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+            WordPoolCompiler.compile(words, bytes);
+            return new MappedWordPool(ByteBuffer.wrap(bytes.toByteArray()));
+        } catch (IOException e) {
+            // cannot happen writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the number of words in the pool
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the length of the longest word, in chars
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @param minLength minimum word length
+     * @return the number of words with at least minLength characters
+     */
+    public int countAtLeast(int minLength) {
+        return count - firstSlot(minLength);
+    }
+
+    /**
+     * Returns a random word with at least minLength characters, or null if
+     * there is none. Only the drawn word is decoded.
+     */
+    public String random(int minLength) {
+        FlightEvents.RandomWordEvent event = FlightEvents.beginRandomWord();
+        long start = Metrics.RANDOM_BY_LENGTH.start();
+        int from = firstSlot(minLength);
+        int n = count - from;
+        String word = n == 0 ? null : word(from + WordList.myRandom(n));
+        Metrics.RANDOM_BY_LENGTH.stop(start);
+        FlightEvents.endRandomWord(event, "MappedWordPool", minLength, null, count,
+                word == null ? "none" : FlightEvents.OK);
+        return word;
+    }
+
+    /**
+     * Decodes the word in the given slot; slots are ordered by ascending
+     * word length.
+     */
+    public String word(int slot) {
+        int start = buffer.getInt(offsetsPos + 4 * slot);
+        int end = buffer.getInt(offsetsPos + 4 * slot + 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(blobPos + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the length in chars of the word in the given slot, from the
+     * lengthStart table rather than by decoding the word.
+     */
+    public int length(int slot) {
+        return LengthIndex.lengthAt(start, slot);
+    }
+
+    /**
+     * @return the entropy of one draw for each minimum length, see
+     *         {@link Entropy#wordBits(WordSource)}
+     */
+    double[] wordBits() {
+        double[] bits = wordBits;
+        if (bits == null) {
+            // racing builders compute the same table
+            bits = Entropy.wordBits(this);
+            wordBits = bits;
+        }
+        return bits;
+    }
+
+    /**
+     * @return the generator over the words, see
+     *         {@link PassphraseGenerator#of(MappedWordPool)}
+     */
+    PassphraseGenerator passphrases() {
+        PassphraseGenerator generator = passphrases;
+        if (generator == null) {
+            generator = new PassphraseGenerator(this);
+            passphrases = generator;
+        }
+        return generator;
+    }
+
+    /**
+     * @return the dictionary scanners over the words, see
+     *         {@link DictionaryScanner#of(MappedWordPool, int)}
+     */
+    DictionaryScanner.Cache dictionaries() {
+        return dictionaries;
+    }
+
+    private int firstSlot(int minLength) {
+        return LengthIndex.firstSlot(start, minLength);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Md4.java
+ */
+
+package passwordgen;
+
+/**
+ * MD4 (RFC 1320), which the JDK does not offer as a public digest. It is only
+ * used to form NTLM hashes, MD4 over the UTF-16LE password, for lookups in
+ * {@link BreachedHashes}; it must not be used to protect anything.
+ */
+final class Md4 {
+
+    private static final int[] ROUND2 = { 0, 4, 8, 12, 1, 5, 9, 13, 2, 6, 10, 14, 3, 7, 11, 15 };
+    private static final int[] ROUND3 = { 0, 8, 4, 12, 2, 10, 6, 14, 1, 9, 5, 13, 3, 11, 7, 15 };
+    private static final int[] SHIFT1 = { 3, 7, 11, 19 };
+    private static final int[] SHIFT2 = { 3, 5, 9, 13 };
+    private static final int[] SHIFT3 = { 3, 9, 11, 15 };
+
+    private final int[] x = new int[16];
+    private final byte[] tail = new byte[128];
+
+    /**
+     * Writes the 16-byte digest of in[0, length) to out[0, 16).
+     */
+    void digest(byte[] in, int length, byte[] out) {
+        int whole = length & ~63;
+        int tailLength = length - whole;
+        System.arraycopy(in, whole, tail, 0, tailLength);
+        tail[tailLength] = (byte) 0x80;
+        int padded = tailLength < 56 ? 64 : 128;
+        for (int i = tailLength + 1; i < padded - 8; i++) {
+            tail[i] = 0;
+        }
+        long bits = (long) length << 3;
+        for (int i = 0; i < 8; i++) {
+            tail[padded - 8 + i] = (byte) (bits >>> (8 * i));
+        }
+
+        int[] state = { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476 };
+        for (int block = 0; block < whole; block += 64) {
+            compress(in, block, state);
+        }
+        for (int block = 0; block < padded; block += 64) {
+            compress(tail, block, state);
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                out[i * 4 + j] = (byte) (state[i] >>> (8 * j));
+            }
+        }
+    }
+
+    private void compress(byte[] buffer, int from, int[] state) {
+        for (int i = 0; i < 16; i++) {
+            int at = from + i * 4;
+            x[i] = (buffer[at] & 0xff) | (buffer[at + 1] & 0xff) << 8
+                    | (buffer[at + 2] & 0xff) << 16 | (buffer[at + 3] & 0xff) << 24;
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        for (int i = 0; i < 16; i++) {
+            int t = Integer.rotateLeft(a + ((b & c) | (~b & d)) + x[i], SHIFT1[i & 3]);
+            a = d;
+            d = c;
+            c = b;
+            b = t;
+        }
+        for (int i = 0; i < 16; i++) {
+            int t = Integer.rotateLeft(a + ((b & c) | (b & d) | (c & d)) + x[ROUND2[i]]
+                    + 0x5a827999, SHIFT2[i & 3]);
+            a = d;
+            d = c;
+            c = b;
+            b = t;
+        }
+        for (int i = 0; i < 16; i++) {
+            int t = Integer.rotateLeft(a + (b ^ c ^ d) + x[ROUND3[i]] + 0x6ed9eba1,
+                    SHIFT3[i & 3]);
+            a = d;
+            d = c;
+            c = b;
+            b = t;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Metrics.java
+ */
+
+package passwordgen;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide counters and latency histograms, exported over JMX by
+ * {@link #register()}. Counters are LongAdders and histograms are striped
+ * {@link LatencyHistogram}s, so recording takes no lock and costs a few
+ * uncontended atomic adds; everything is merged only when read. Passwords and
+ * random words are counted on every call but timed on a sample, which keeps
+ * the clock reads off most calls.
+ */
+public final class Metrics {
+
+    /** Name the MBean is registered under. */
+    public static final String OBJECT_NAME = "passwordgen:type=Metrics";
+
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+
+    static final LongAdder PASSPHRASES = new LongAdder();
+    static final LongAdder WORDS_IMPORTED = new LongAdder();
+    static final LongAdder RNG_BYTES = new LongAdder();
+    static final LongAdder PATTERN_HITS = new LongAdder();
+    static final LongAdder PATTERN_MISSES = new LongAdder();
+
+    static final LatencyHistogram PASSWORD_LATENCY = new LatencyHistogram();
+    static final LatencyHistogram PASSPHRASE_LATENCY = new LatencyHistogram();
+    static final LatencyHistogram IMPORT_DURATION = new LatencyHistogram();
+    static final LatencyHistogram RANDOM_BY_LENGTH = new LatencyHistogram();
+    static final LatencyHistogram RANDOM_BY_PATTERN = new LatencyHistogram();
+
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server, once. Failures are
+     * logged, not thrown: the application works without it.
+     */
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+                    new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by another class loader's copy
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Could not register " + OBJECT_NAME, e);
+        }
+        registered = true;
+    }
+
+    /**
+     * @return the current values, as JMX reads them
+     */
+    public static MetricsMXBean read() {
+        return new Bean();
+    }
+
+    static void passphrasesGenerated(long count, long nanos) {
+        if (count > 0) {
+            PASSPHRASES.add(count);
+            PASSPHRASE_LATENCY.record(nanos / count);
+        }
+    }
+
+    static void imported(long words, long nanos) {
+        WORDS_IMPORTED.add(words);
+        IMPORT_DURATION.record(nanos);
+    }
+
+    private static final class Bean implements MetricsMXBean {
+
+        public long getPasswordsGenerated() {
+            return PASSWORD_LATENCY.calls();
+        }
+
+        public long getPassphrasesGenerated() {
+            return PASSPHRASES.sum();
+        }
+
+        public LatencySnapshot getPasswordLatency() {
+            return PASSWORD_LATENCY.snapshot();
+        }
+
+        public LatencySnapshot getPassphraseLatency() {
+            return PASSPHRASE_LATENCY.snapshot();
+        }
+
+        public long getWordsImported() {
+            return WORDS_IMPORTED.sum();
+        }
+
+        public LatencySnapshot getImportDuration() {
+            return IMPORT_DURATION.snapshot();
+        }
+
+        public LatencySnapshot getRandomByLengthLatency() {
+            return RANDOM_BY_LENGTH.snapshot();
+        }
+
+        public LatencySnapshot getRandomByPatternLatency() {
+            return RANDOM_BY_PATTERN.snapshot();
+        }
+
+        public long getRngBytes() {
+            return RNG_BYTES.sum();
+        }
+
+        public long getPatternCacheHits() {
+            return PATTERN_HITS.sum();
+        }
+
+        public long getPatternCacheMisses() {
+            return PATTERN_MISSES.sum();
+        }
+
+        public double getPatternCacheHitRate() {
+            long hits = PATTERN_HITS.sum();
+            long lookups = hits + PATTERN_MISSES.sum();
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        public long getFirstFrameMillis() {
+            return StartupTimes.firstFrameMillis();
+        }
+
+        public long getPoolReadyMillis() {
+            return StartupTimes.poolReadyMillis();
+        }
+
+        public void reset() {
+            PASSPHRASES.reset();
+            WORDS_IMPORTED.reset();
+            RNG_BYTES.reset();
+            PATTERN_HITS.reset();
+            PATTERN_MISSES.reset();
+            PASSWORD_LATENCY.reset();
+            PASSPHRASE_LATENCY.reset();
+            IMPORT_DURATION.reset();
+            RANDOM_BY_LENGTH.reset();
+            RANDOM_BY_PATTERN.reset();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * MetricsMXBean.java
+ */
+
+package passwordgen;
+
+/**
+ * Management interface of {@link Metrics}, registered as
+ * {@value Metrics#OBJECT_NAME}. Counts are totals since startup or the last
+ * {@link #reset()}; latencies are in nanoseconds. Password and random word
+ * latencies are sampled, one call in {@value LatencyHistogram#SAMPLE} per
+ * thread stripe, so their count is that of the timed calls.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return passwords generated by PasswordEngine and PasswordPolicy
+     */
+    long getPasswordsGenerated();
+
+    /**
+     * @return passphrases generated by PassphraseGenerator
+     */
+    long getPassphrasesGenerated();
+
+    /**
+     * @return time to generate one password
+     */
+    LatencySnapshot getPasswordLatency();
+
+    /**
+     * @return time per passphrase, one entry per generate call; a bulk call
+     *         records its mean
+     */
+    LatencySnapshot getPassphraseLatency();
+
+    /**
+     * @return words added by WordList imports
+     */
+    long getWordsImported();
+
+    /**
+     * @return duration of each WordList import
+     */
+    LatencySnapshot getImportDuration();
+
+    /**
+     * @return latency of random(int) on word lists and mapped pools
+     */
+    LatencySnapshot getRandomByLengthLatency();
+
+    /**
+     * @return latency of WordList.random(String)
+     */
+    LatencySnapshot getRandomByPatternLatency();
+
+    /**
+     * @return bytes drawn from SecureRandom by RandomSource
+     */
+    long getRngBytes();
+
+    long getPatternCacheHits();
+
+    long getPatternCacheMisses();
+
+    /**
+     * @return hits over lookups of the pattern match caches, 0 if none
+     */
+    double getPatternCacheHitRate();
+
+    /**
+     * @return ms after JVM start the main frame was shown, -1 if it has not
+     */
+    long getFirstFrameMillis();
+
+    /**
+     * @return ms after JVM start the word pool was ready, -1 if it is not
+     */
+    long getPoolReadyMillis();
+
+    /**
+     * Zeroes the counters and histograms.
+     */
+    void reset();
+}
@@ -0,0 +1,229 @@
+/*
+ * PackedWords.java
+ */
+
+package passwordgen;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Words stored back to back as UTF-8 in one byte[] with an int[] of offsets,
+ * the in-heap counterpart of the {@link WordPoolCompiler} layout. A word costs
+ * its encoded bytes plus four, against some fifty for a String and its
+ * reference, and is decoded only when it is asked for.
+ *
+ * <p>Instances are immutable views of the first size words. Like the WordList
+ * snapshots, an append may reuse the arrays of the view it extends, writing
+ * only above that view's end, so appends must only be made to the latest view
+ * and by one thread at a time.</p>
+ */
+final class PackedWords implements WordSource {
+
+    static final PackedWords EMPTY = new PackedWords(new byte[0], new int[1], 0, true);
+
+    private final byte[] bytes;
+
+    /** Word i is bytes[offsets[i], offsets[i + 1]). */
+    private final int[] offsets;
+    private final int size;
+
+    /** Whether every word is ASCII, so byte and char lengths agree. */
+    private final boolean ascii;
+
+    private PackedWords(byte[] bytes, int[] offsets, int size, boolean ascii) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.size = size;
+        this.ascii = ascii;
+    }
+
+    /**
+     * Packs words[0, size).
+     */
+    static PackedWords pack(String[] words, int size) {
+        return EMPTY.append(words, size);
+    }
+
+    /**
+     * Returns a view holding these words followed by batch[0, count).
+     */
+    PackedWords append(String[] batch, int count) {
+        int used = offsets[size];
+        int needed = used;
+        for (int i = 0; i < count; i++) {
+            needed += batch[i].length();
+        }
+
+        byte[] b = bytes;
+        int[] o = offsets;
+        if (needed > b.length) {
+            b = Arrays.copyOf(b, Math.max(needed, b.length + (b.length >> 1) + 64));
+        }
+        if (size + count + 1 > o.length) {
+            o = Arrays.copyOf(o, Math.max(size + count + 1, o.length + (o.length >> 1) + 16));
+        }
+
+        boolean allAscii = ascii;
+        int at = used;
+        for (int i = 0; i < count; i++) {
+            String word = batch[i];
+            int n = word.length();
+            int k = 0;
+            if (at + n <= b.length) {
+                while (k < n && word.charAt(k) < 0x80) {
+                    b[at + k] = (byte) word.charAt(k);
+                    k++;
+                }
+            }
+            if (k == n) {
+                at += n;
+            } else {
+                byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+                if (at + encoded.length > b.length) {
+                    b = Arrays.copyOf(b, Math.max(at + encoded.length, b.length + (b.length >> 1)));
+                }
+                System.arraycopy(encoded, 0, b, at, encoded.length);
+                at += encoded.length;
+                allAscii &= encoded.length == n;
+            }
+            o[size + i + 1] = at;
+        }
+        return new PackedWords(b, o, size + count, allAscii);
+    }
+
+    /**
+     * Returns a view without the word at position i.
+     */
+    PackedWords without(int i) {
+        int from = offsets[i];
+        int gap = offsets[i + 1] - from;
+        int used = offsets[size];
+        byte[] b = new byte[used - gap];
+        System.arraycopy(bytes, 0, b, 0, from);
+        System.arraycopy(bytes, from + gap, b, from, used - from - gap);
+        int[] o = new int[size];
+        System.arraycopy(offsets, 0, o, 0, i + 1);
+        for (int k = i + 1; k < size; k++) {
+            o[k] = offsets[k + 1] - gap;
+        }
+        return new PackedWords(b, o, size - 1, ascii);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String word(int i) {
+        int from = offsets[i];
+        return new String(bytes, from, offsets[i + 1] - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of UTF-8 bytes of the word at position i
+     */
+    int byteLength(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Copies the UTF-8 bytes of the word at position i into out at the given
+     * position.
+     *
+     * @return the position after the word
+     */
+    int copy(int i, byte[] out, int at) {
+        int length = offsets[i + 1] - offsets[i];
+        System.arraycopy(bytes, offsets[i], out, at, length);
+        return at + length;
+    }
+
+    public int length(int i) {
+        int from = offsets[i];
+        int to = offsets[i + 1];
+        if (ascii) {
+            return to - from;
+        }
+        int chars = 0;
+        for (int k = from; k < to; k++) {
+            int b = bytes[k] & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                // a four-byte sequence is a surrogate pair in UTF-16
+                chars += b >= 0xf0 ? 2 : 1;
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Writes the word count, the word byte lengths as varints and the UTF-8
+     * blob, each section prefixed with its length so that a reader can take
+     * it with one bulk read.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        byte[] lengths = new byte[5 * size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int length = offsets[i + 1] - offsets[i];
+            while (length >= 0x80) {
+                lengths[n++] = (byte) (length | 0x80);
+                length >>>= 7;
+            }
+            lengths[n++] = (byte) length;
+        }
+        out.writeInt(size);
+        out.writeInt(n);
+        out.write(lengths, 0, n);
+        out.writeInt(offsets[size]);
+        out.write(bytes, 0, offsets[size]);
+    }
+
+    /**
+     * Reads what {@link #writeTo(DataOutputStream)} wrote.
+     */
+    static PackedWords readFrom(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        byte[] lengths = new byte[checkLength(in.readInt())];
+        in.readFully(lengths);
+        byte[] bytes = new byte[checkLength(in.readInt())];
+        in.readFully(bytes);
+
+        int[] offsets = new int[checkLength(size) + 1];
+        int at = 0;
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int length = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (n == lengths.length || shift > 28) {
+                    throw new IOException("Corrupt word lengths");
+                }
+                b = lengths[n++];
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            at += length;
+            offsets[i + 1] = at;
+        }
+        if (at != bytes.length) {
+            throw new IOException("Word lengths do not match the word bytes");
+        }
+
+        boolean ascii = true;
+        for (int i = 0; i < bytes.length && ascii; i++) {
+            ascii = bytes[i] >= 0;
+        }
+        return new PackedWords(bytes, offsets, size, ascii);
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupt word list snapshot");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * ParallelWordImporter.java
+ */
+
+package passwordgen;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel variant of {@link WordImporter} for large files. The file is cut
+ * into chunks whose edges fall just after a line break or delimiter, each
+ * chunk is memory-mapped and tokenized on the common fork-join pool, and the
+ * per-chunk words are concatenated in file order, so the result is the same
+ * as a sequential import. A delimiter holding a line break may span one, so
+ * such files are read sequentially.
+ */
+final class ParallelWordImporter {
+
+    private static final long MIN_CHUNK = 8L << 20;
+    private static final long MAX_CHUNK = 256L << 20;
+    private static final int SCAN_WINDOW = 1 << 20;
+
+    private final String delimiter;
+    private final byte[] delimiterBytes;
+
+    /**
+     * @param delimiter literal word separator; line breaks always separate
+     */
+    ParallelWordImporter(String delimiter) {
+        this.delimiter = delimiter == null ? "" : delimiter;
+        this.delimiterBytes = usableForSplitting(this.delimiter)
+                ? this.delimiter.getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+    }
+
+    /**
+     * @return whether a file of the given size spans enough chunks, and the
+     *         machine has enough cores, for a parallel import to pay off
+     */
+    static boolean worthwhile(long size) {
+        return Runtime.getRuntime().availableProcessors() > 1 && size >= 2 * MIN_CHUNK;
+    }
+
+    /**
+     * Tokenizes the whole file.
+     *
+     * @return the words in file order
+     */
+    String[] read(final FileChannel channel) throws IOException {
+        if (delimiter.indexOf('\n') >= 0 || delimiter.indexOf('\r') >= 0) {
+            WordImporter importer = new WordImporter(delimiter);
+            importer.read(channel);
+            return importer.words();
+        }
+        long size = channel.size();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long chunk = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, size / (4L * parallelism)));
+
+        List<Long> edges = new ArrayList<Long>();
+        edges.add(0L);
+        long last = 0;
+        for (long nominal = chunk; nominal < size; nominal += chunk) {
+            if (nominal <= last) {
+                continue;
+            }
+            long edge = nextBoundary(channel, nominal, size);
+            if (edge > last && edge < size) {
+                edges.add(edge);
+                last = edge;
+            }
+        }
+        edges.add(size);
+
+        List<Callable<String[]>> tasks = new ArrayList<Callable<String[]>>();
+        for (int i = 0; i + 1 < edges.size(); i++) {
+            final long from = edges.get(i);
+            final long to = edges.get(i + 1);
+            tasks.add(new Callable<String[]>() {
+                public String[] call() throws IOException {
+                    MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                    WordImporter importer = new WordImporter(delimiter);
+                    importer.read(bytes);
+                    return importer.words();
+                }
+            });
+        }
+
+        // the calling thread tokenizes the first chunk while the pool's
+        // workers take the rest
+        List<Future<String[]>> futures = new ArrayList<Future<String[]>>(tasks.size());
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(ForkJoinPool.commonPool().submit(tasks.get(i)));
+        }
+        List<String[]> parts = new ArrayList<String[]>(tasks.size());
+        int total = 0;
+        try {
+            String[] first = tasks.get(0).call();
+            parts.add(first);
+            total += first.length;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        for (Future<String[]> future : futures) {
+            try {
+                String[] part = future.get();
+                parts.add(part);
+                total += part.length;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Import interrupted", e);
+            }
+        }
+
+        String[] words = new String[total];
+        int at = 0;
+        for (String[] part : parts) {
+            System.arraycopy(part, 0, words, at, part.length);
+            at += part.length;
+        }
+        return words;
+    }
+
+    /**
+     * Returns the first offset at or after from which directly follows a
+     * line break or a delimiter, or size if there is none.
+     */
+    private long nextBoundary(FileChannel channel, long from, long size) throws IOException {
+        int d = delimiterBytes.length;
+        long pos = from;
+        while (pos < size) {
+            int window = (int) Math.min(SCAN_WINDOW + d, size - pos);
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, pos, window);
+            int scan = Math.min(window, SCAN_WINDOW);
+            for (int i = 0; i < scan; i++) {
+                byte b = bytes.get(i);
+                if (b == '\n' || b == '\r') {
+                    return pos + i + 1;
+                }
+                if (d > 0 && b == delimiterBytes[0] && i + d <= window && delimiterAt(bytes, i)) {
+                    return pos + i + d;
+                }
+            }
+            pos += scan;
+        }
+        return size;
+    }
+
+    private boolean delimiterAt(MappedByteBuffer bytes, int i) {
+        for (int k = 1; k < delimiterBytes.length; k++) {
+            if (bytes.get(i + k) != delimiterBytes[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A delimiter found by scanning from an arbitrary offset is only certain
+     * to be one the sequential importer would also split on if it cannot
+     * overlap itself and holds no line break (those are split on first).
+     * Other delimiters leave chunks to be cut at line breaks only.
+     */
+    private static boolean usableForSplitting(String delimiter) {
+        if (delimiter.indexOf('\n') >= 0 || delimiter.indexOf('\r') >= 0) {
+            return false;
+        }
+        int d = delimiter.length();
+        for (int k = 1; k < d; k++) {
+            if (delimiter.regionMatches(0, delimiter, k, d - k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
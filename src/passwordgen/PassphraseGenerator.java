@@ -0,0 +1,252 @@
+/*
+ * PassphraseGenerator.java
+ */
+
+package passwordgen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Bulk passphrase generation. The words of a pool are copied once, in
+ * ascending length order, into a single char[] with an int[] of offsets, so a
+ * word of at least k characters is a random index into a contiguous range and
+ * writing it is one array copy. Indices are drawn a batch at a time and the
+ * phrases assembled in a char buffer kept per thread, which is handed to the
+ * output in large blocks; apart from that buffer nothing is allocated per
+ * phrase or per word.
+ *
+ * <p>Instances are immutable and may be shared between threads. Get one with
+ * {@link #of(MappedWordPool)} or {@link #of(WordList)}, which build it once
+ * per pool or list version.</p>
+ */
+public final class PassphraseGenerator {
+
+    /** Chars assembled before they are handed to the output. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Word indices drawn at a time. */
+    private static final int BATCH = 1024;
+
+    /** Phrase buffer and drawn indices. */
+    private static final class Scratch {
+        char[] chars = new char[BUFFER];
+        final int[] picks = new int[BATCH];
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /** Word i is chars[offsets[i], offsets[i + 1]), by ascending length. */
+    private final char[] chars;
+    private final int[] offsets;
+
+    /** start[k] is the first word of length >= k. */
+    private final int[] start;
+
+    /**
+     * Copies words which are in ascending length order.
+     */
+    PassphraseGenerator(WordSource byLength) {
+        int size = byLength.size();
+        char[] c = new char[Math.max(16, 8 * size)];
+        offsets = new int[size + 1];
+        int[] lengths = new int[size];
+        int total = 0;
+        int maxLength = 0;
+        for (int i = 0; i < size; i++) {
+            String word = byLength.word(i);
+            int length = word.length();
+            lengths[i] = length;
+            if (total + length > c.length) {
+                c = Arrays.copyOf(c, Math.max(total + length, c.length + (c.length >> 1)));
+            }
+            word.getChars(0, length, c, total);
+            total += length;
+            offsets[i + 1] = total;
+            maxLength = Math.max(maxLength, length);
+        }
+        chars = c.length == total ? c : Arrays.copyOf(c, total);
+        start = LengthIndex.startTable(lengths, size, maxLength);
+    }
+
+    /**
+     * @return the generator over the pool's words, built on first use
+     */
+    public static PassphraseGenerator of(MappedWordPool pool) {
+        return pool.passphrases();
+    }
+
+    /**
+     * @return the generator over the list's current words, built on first
+     *         use after each change to the list
+     */
+    public static PassphraseGenerator of(WordList list) {
+        return list.passphrases();
+    }
+
+    /**
+     * @return the length of the longest word, in chars
+     */
+    public int maxLength() {
+        return start.length - 2;
+    }
+
+    /**
+     * @param minLength minimum word length
+     * @return the number of words with at least minLength characters
+     */
+    public int countAtLeast(int minLength) {
+        return offsets.length - 1 - firstWord(minLength);
+    }
+
+    /**
+     * Writes count passphrases to out, each a line of the given number of
+     * words of at least minLength characters joined by the separator.
+     *
+     * @throws IllegalArgumentException if words is not positive, count is
+     *         negative or there is no word of minLength characters or more
+     * @throws IOException if out does
+     */
+    public void generate(int count, int words, int minLength, char separator, Appendable out)
+            throws IOException {
+        generate(count, words, minLength, String.valueOf(separator), out);
+    }
+
+    /**
+     * Same as {@link #generate(int, int, int, char, Appendable)} with a
+     * separator of any length.
+     */
+    public void generate(long count, int words, int minLength, String separator, Appendable out)
+            throws IOException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count should not be negative.");
+        }
+        FlightEvents.PassphraseEvent event = FlightEvents.beginPassphrase();
+        boolean done = false;
+        try {
+            write(count, words, minLength, separator.toCharArray(), out);
+            done = true;
+        } finally {
+            FlightEvents.endPassphrase(event, count, words, minLength, separator, done);
+        }
+    }
+
+    private void write(long count, int words, int minLength, char[] sep, Appendable out)
+            throws IOException {
+        int from = checkedFirstWord(words, minLength);
+        int choices = offsets.length - 1 - from;
+        int maxChars = words * (start.length - 2 + sep.length) + 1;
+
+        Scratch scratch = SCRATCH.get();
+        if (scratch.chars.length < maxChars) {
+            scratch.chars = new char[maxChars];
+        }
+        char[] buffer = scratch.chars;
+        int[] picks = scratch.picks;
+        int perBatch = Math.max(1, BATCH / words);
+        RandomSource rnd = RandomSource.current();
+        long began = System.nanoTime();
+        long total = count;
+
+        int at = 0;
+        while (count > 0) {
+            int phrases = (int) Math.min(count, perBatch);
+            int drawn = phrases * words;
+            if (drawn > picks.length) {
+                // a single phrase of more than BATCH words
+                picks = new int[drawn];
+            }
+            for (int i = 0; i < drawn; i++) {
+                picks[i] = from + rnd.nextInt(choices);
+            }
+
+            int p = 0;
+            for (int n = 0; n < phrases; n++) {
+                if (at + maxChars > buffer.length) {
+                    flush(buffer, at, out);
+                    at = 0;
+                }
+                for (int w = 0; w < words; w++) {
+                    if (w > 0) {
+                        System.arraycopy(sep, 0, buffer, at, sep.length);
+                        at += sep.length;
+                    }
+                    int word = picks[p++];
+                    int length = offsets[word + 1] - offsets[word];
+                    System.arraycopy(chars, offsets[word], buffer, at, length);
+                    at += length;
+                }
+                buffer[at++] = '\n';
+            }
+            count -= phrases;
+        }
+        flush(buffer, at, out);
+        Metrics.passphrasesGenerated(total, System.nanoTime() - began);
+    }
+
+    /**
+     * Returns one passphrase of the given number of words of at least
+     * minLength characters, without a line break.
+     *
+     * @throws IllegalArgumentException as for
+     *         {@link #generate(int, int, int, char, Appendable)}
+     */
+    public String generate(int words, int minLength, char separator) {
+        FlightEvents.PassphraseEvent event = FlightEvents.beginPassphrase();
+        long began = System.nanoTime();
+        int from = checkedFirstWord(words, minLength);
+        int choices = offsets.length - 1 - from;
+        RandomSource rnd = RandomSource.current();
+        StringBuilder phrase = new StringBuilder(words * (start.length - 1));
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                phrase.append(separator);
+            }
+            int word = from + rnd.nextInt(choices);
+            phrase.append(chars, offsets[word], offsets[word + 1] - offsets[word]);
+        }
+        String result = phrase.toString();
+        Metrics.passphrasesGenerated(1, System.nanoTime() - began);
+        FlightEvents.endPassphrase(event, 1, words, minLength, String.valueOf(separator), true);
+        return result;
+    }
+
+    private int checkedFirstWord(int words, int minLength) {
+        if (words <= 0) {
+            throw new IllegalArgumentException("Passphrase length should be greater than 0.");
+        }
+        int from = firstWord(minLength);
+        if (from == offsets.length - 1) {
+            throw new IllegalArgumentException("No words of length " + minLength + " or more");
+        }
+        return from;
+    }
+
+    private int firstWord(int minLength) {
+        return LengthIndex.firstSlot(start, minLength);
+    }
+
+    /**
+     * Hands buffer[0, length) to out with a bulk call where the type allows.
+     */
+    private static void flush(char[] buffer, int length, Appendable out) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buffer, 0, length);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(buffer, 0, length);
+        } else if (out instanceof CharBuffer) {
+            ((CharBuffer) out).put(buffer, 0, length);
+        } else {
+            out.append(CharBuffer.wrap(buffer, 0, length));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * PasswordEngine.java
+ */
+
+package passwordgen;
+
+/**
+ * The character-class password algorithm: a password of a given length with
+ * at least the requested number of upper case, numeric and special
+ * characters, the rest lower case, in random order.
+ *
+ * The character tables are built once per configuration and the password is
+ * written into a caller-supplied buffer and shuffled in place, so generating
+ * a password allocates nothing. An engine is immutable and may be shared
+ * between threads as long as each thread passes its own buffer and
+ * RandomSource.
+ */
+public final class PasswordEngine {
+
+    public static final String LOWER = "qwertyuiopasdfghjklzxcvbnm";
+    public static final String NUMERIC = "123456789";
+    public static final String DEFAULT_SPECIAL = "!~#$%^&*_-+=|:<>.?";
+
+    private final int length;
+    private final int numUpper;
+    private final int numNumeric;
+    private final int numSpecial;
+
+    private final char[] lowerTable;
+    private final char[] upperTable;
+    private final char[] numericTable;
+    private final char[] specialTable;
+
+    private volatile Entropy entropy;
+
+    /**
+     * @param length total password length
+     * @param numUpper number of upper case characters
+     * @param numNumeric number of numeric characters
+     * @param numSpecial number of special characters
+     * @param specials the allowed special characters
+     * @throws IllegalArgumentException if the counts do not fit in the length,
+     *         or special characters are required but none are allowed
+     */
+    public PasswordEngine(int length, int numUpper, int numNumeric, int numSpecial,
+                          String specials) {
+        if (length < 0 || numUpper < 0 || numNumeric < 0 || numSpecial < 0) {
+            throw new IllegalArgumentException("Counts must not be negative.");
+        }
+        if (numUpper + numNumeric + numSpecial > length) {
+            throw new IllegalArgumentException(
+                    "Password length should be greater than or equal\nto the sum of the other 3 numbers.");
+        }
+        if (numSpecial > 0 && (specials == null || specials.isEmpty())) {
+            throw new IllegalArgumentException("No special characters are allowed.");
+        }
+        this.length = length;
+        this.numUpper = numUpper;
+        this.numNumeric = numNumeric;
+        this.numSpecial = numSpecial;
+
+        lowerTable = LOWER.toCharArray();
+        upperTable = LOWER.toUpperCase().toCharArray();
+        numericTable = NUMERIC.toCharArray();
+        specialTable = specials == null ? new char[0] : specials.toCharArray();
+    }
+
+    /**
+     * @return the length of the passwords this engine generates
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the entropy of one password from this engine
+     */
+    public Entropy entropy() {
+        Entropy e = entropy;
+        if (e == null) {
+            e = Entropy.ofPassword(length, numUpper, numNumeric, numSpecial, new String(specialTable));
+            entropy = e;
+        }
+        return e;
+    }
+
+    /**
+     * Writes a password into out[0, length()).
+     *
+     * @param out buffer of at least length() chars
+     * @param rnd source of randomness
+     */
+    public void generate(char[] out, RandomSource rnd) {
+        FlightEvents.PasswordEvent event = FlightEvents.beginPassword();
+        long start = Metrics.PASSWORD_LATENCY.start();
+        int i = 0;
+        i = fill(out, i, numUpper, upperTable, rnd);
+        i = fill(out, i, numNumeric, numericTable, rnd);
+        i = fill(out, i, numSpecial, specialTable, rnd);
+        fill(out, i, length - i, lowerTable, rnd);
+
+        // Fisher-Yates
+        for (int j = length - 1; j > 0; j--) {
+            int k = rnd.nextInt(j + 1);
+            char c = out[j];
+            out[j] = out[k];
+            out[k] = c;
+        }
+        Metrics.PASSWORD_LATENCY.stop(start);
+        FlightEvents.endPassword(event, "engine", length, numUpper, numNumeric, numSpecial);
+    }
+
+    /**
+     * Convenience for one-off callers such as the GUI.
+     *
+     * @param rnd source of randomness
+     * @return a new password
+     */
+    public String generate(RandomSource rnd) {
+        char[] out = new char[length];
+        generate(out, rnd);
+        return new String(out);
+    }
+
+    private static int fill(char[] out, int from, int count, char[] table, RandomSource rnd) {
+        int end = from + count;
+        for (int i = from; i < end; i++) {
+            out[i] = table[rnd.nextInt(table.length)];
+        }
+        return end;
+    }
+}
@@ -36,9 +36,23 @@ public class PasswordGenApp extends SingleFrameApplication {
     }
 
     /**
-     * Main method launching the application.
+     * Main method launching the application. Batch options (see
+     * {@link PasswordGenCli}) and {@code --serve} (see
+     * {@link PasswordGenServer}) run headless instead of showing the GUI.
+     * In every mode the {@link Metrics} MBean is registered first.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        Metrics.register();
+        if (PasswordGenServer.isServeRequest(args)) {
+            int status = PasswordGenServer.run(args);
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+        if (PasswordGenCli.isBatchRequest(args)) {
+            System.exit(PasswordGenCli.run(args));
+        }
         launch(PasswordGenApp.class, args);
     }
 }
@@ -0,0 +1,593 @@
+/*
+ * PasswordGenCli.java
+ */
+
+package passwordgen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless batch mode. Generates passwords or passphrases on every core and
+ * streams them, one per line, to stdout or a file without starting Swing:
+ *
+ * <pre>
+ * java -jar pwgen.jar --count 10000000 --length 16 --upper 2 --numeric 2 --special 2
+ * java -jar pwgen.jar --count 1000 --phrase 5 --min-word 4 --out phrases.txt
+ * java -jar pwgen.jar --count 1000 --length 16 --policy "max-repeat=1; first=upper"
+ * java -jar pwgen.jar --check passwords.txt --breached pwned-sha1.bin
+ * </pre>
+ *
+ * {@code --policy RULES} adds {@link PasswordPolicy} rules to the counts
+ * given by the other options.
+ *
+ * {@code --unique FILE} never outputs a result that this run, or a recent
+ * run using the same file, has already output; see {@link UniquenessFilter}.
+ * The file is memory-mapped and created on first use with room for
+ * {@code --unique-capacity} results, by default the count or one million,
+ * whichever is larger. An existing file keeps the capacity it was created
+ * with, and a run whose count or {@code --unique-capacity} exceeds it is
+ * refused, since the filter would start forgetting results of the same run;
+ * start a new file instead. {@code --unique -} keeps the filter in memory
+ * for this run only.
+ *
+ * {@code --no-words M} regenerates any password containing a word of M or
+ * more characters from the word pool, ignoring case; see
+ * {@link DictionaryScanner}.
+ *
+ * {@code --breached FILE} regenerates any result found in a breach corpus
+ * compiled by {@link BreachedHashCompiler}; it defaults to the file named by
+ * the {@value BreachedHashes#FILE_PROPERTY} system property. {@code --check
+ * FILE} instead reads passwords, one per line, from the file or from stdin
+ * for {@code -}, prints the line numbers of those in the corpus, and exits
+ * with status 3 if there are any.
+ *
+ * The throughput and the entropy of each result are reported on stderr when
+ * the run finishes; the entropy does not discount the results screened out.
+ * {@code --min-bits B} refuses to generate anything from a configuration
+ * weaker than B bits; it defaults to the
+ * {@value Entropy#MIN_BITS_PROPERTY} system property.
+ */
+public class PasswordGenCli {
+
+    private static final int CHUNK_CHARS = 1 << 18;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /** Results screened at a time. */
+    private static final int FILTER_BATCH = 32;
+
+    /** Exit status of a check that found breached passwords. */
+    static final int BREACHED = 3;
+
+    long count = 1;
+    int length = 10;
+    int upper = 2;
+    int numeric = 2;
+    int special = 2;
+    String specials = PasswordEngine.DEFAULT_SPECIAL;
+    int phrase = 0;
+    int minWord = 0;
+    String separator = " ";
+    String out = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    double minBits = Entropy.defaultMinimumBits();
+    String policyRules = null;
+    String unique = null;
+    long uniqueCapacity = 0;
+    int noWords = 0;
+    String breachedFile = null;
+    String check = null;
+    boolean help = false;
+    final LongAdder dictionaryHits = new LongAdder();
+    final LongAdder breachedHits = new LongAdder();
+    PasswordEngine engine;
+    PasswordPolicy policy;
+
+    /**
+     * @return true if the arguments ask for batch mode rather than the GUI
+     */
+    public static boolean isBatchRequest(String[] args) {
+        for (String arg : args) {
+            if ("--count".equals(arg) || "--phrase".equals(arg) || "--check".equals(arg)
+                    || "--help".equals(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs batch mode.
+     *
+     * @param args command line arguments
+     * @return the process exit status
+     */
+    public static int run(String[] args) {
+        PasswordGenCli cli = new PasswordGenCli();
+        try {
+            cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage(System.err);
+            return 2;
+        }
+        if (cli.help) {
+            System.out.println("Password Generator batch mode");
+            usage(System.out);
+            return 0;
+        }
+
+        try {
+            if (cli.check != null) {
+                return cli.check() == 0 ? 0 : BREACHED;
+            }
+            cli.generate();
+            return 0;
+        } catch (Exception e) {
+            System.err.println("pwgen: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    static void usage(PrintStream ps) {
+        ps.println("usage: pwgen --count N [--length L] [--upper U] [--numeric N] [--special S]");
+        ps.println("             [--specials CHARS] [--policy RULES] [--min-bits B] [--threads T]");
+        ps.println("             [--unique FILE|-] [--unique-capacity C] [--no-words M]");
+        ps.println("             [--breached FILE] [--out FILE]");
+        ps.println("       pwgen --count N --phrase WORDS [--min-word M] [--separator SEP]");
+        ps.println("             [--min-bits B] [--threads T] [--unique FILE|-]");
+        ps.println("             [--unique-capacity C] [--breached FILE] [--out FILE]");
+        ps.println("       pwgen --check FILE|- [--breached FILE]");
+    }
+
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--help".equals(arg)) {
+                help = true;
+                return;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            if ("--count".equals(arg)) {
+                count = parseLong(arg, value);
+            } else if ("--length".equals(arg)) {
+                length = parseInt(arg, value);
+            } else if ("--upper".equals(arg)) {
+                upper = parseInt(arg, value);
+            } else if ("--numeric".equals(arg)) {
+                numeric = parseInt(arg, value);
+            } else if ("--special".equals(arg)) {
+                special = parseInt(arg, value);
+            } else if ("--specials".equals(arg)) {
+                specials = value;
+            } else if ("--phrase".equals(arg)) {
+                phrase = parseInt(arg, value);
+            } else if ("--min-word".equals(arg)) {
+                minWord = parseInt(arg, value);
+            } else if ("--separator".equals(arg)) {
+                separator = value;
+            } else if ("--policy".equals(arg)) {
+                policyRules = value;
+            } else if ("--min-bits".equals(arg)) {
+                minBits = parseDouble(arg, value);
+            } else if ("--threads".equals(arg)) {
+                threads = Math.max(1, parseInt(arg, value));
+            } else if ("--unique".equals(arg)) {
+                unique = value;
+            } else if ("--unique-capacity".equals(arg)) {
+                uniqueCapacity = parseLong(arg, value);
+            } else if ("--no-words".equals(arg)) {
+                noWords = parseInt(arg, value);
+            } else if ("--breached".equals(arg)) {
+                breachedFile = value;
+            } else if ("--check".equals(arg)) {
+                check = value;
+            } else if ("--out".equals(arg)) {
+                out = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        if (phrase == 0 && policyRules != null) {
+            policy = PasswordPolicy.compile("length=" + length + "; upper=" + upper
+                    + "; numeric=" + numeric + "; special=" + special + "; specials=" + specials
+                    + "\n" + policyRules);
+            length = policy.length();
+        } else if (phrase == 0) {
+            engine = new PasswordEngine(length, upper, numeric, special, specials);
+        } else if (phrase < 0) {
+            throw new IllegalArgumentException("Passphrase length should be greater than 0.");
+        }
+        if (phrase > 0 && (separator.indexOf('\n') >= 0 || separator.indexOf('\r') >= 0)) {
+            // results are screened and written one per line
+            throw new IllegalArgumentException("--separator may not contain a line break");
+        }
+        if (phrase > 0 && noWords > 0) {
+            throw new IllegalArgumentException("--no-words applies to passwords only");
+        }
+    }
+
+    private static int parseInt(String arg, String value) {
+        long n = parseLong(arg, value);
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Value too large for " + arg + ": " + value);
+        }
+        return (int) n;
+    }
+
+    private static double parseDouble(String arg, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + arg + ": " + value);
+        }
+    }
+
+    private static long parseLong(String arg, String value) {
+        try {
+            long n = Long.parseLong(value);
+            if (n < 0) {
+                throw new IllegalArgumentException("Negative value for " + arg + ": " + value);
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + arg + ": " + value);
+        }
+    }
+
+    void generate() throws IOException, InterruptedException {
+        final PassphraseGenerator phrases;
+        Entropy entropy;
+        if (phrase > 0) {
+            MappedWordPool pool = MappedWordPool.openDefault();
+            if (pool.countAtLeast(minWord) == 0) {
+                throw new IOException("No words of length " + minWord + " or more");
+            }
+            phrases = PassphraseGenerator.of(pool);
+            entropy = Entropy.ofPassphrase(pool, phrase, minWord, separator);
+        } else {
+            phrases = null;
+            entropy = policy != null ? policy.entropy() : engine.entropy();
+        }
+        entropy.require(minBits);
+
+        final DictionaryScanner dictionary = noWords > 0
+                ? DictionaryScanner.of(MappedWordPool.openDefault(), noWords) : null;
+        final BreachedHashes breached = openBreached();
+        final UniquenessFilter filter = openFilter();
+        final FileOutputStream fos = out == null
+                ? new FileOutputStream(FileDescriptor.out)
+                : new FileOutputStream(out);
+        final WritableByteChannel channel = fos.getChannel();
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                final long share = count / threads + (t < count % threads ? 1 : 0);
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        new Worker(phrases, dictionary, breached, filter, channel).run(share);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (out != null) {
+                fos.close();
+            }
+            if (filter != null) {
+                filter.close();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.err.printf("Generated %d %s of %s in %.3f s (%.0f %s/sec, %d threads)%n",
+                count, phrase > 0 ? "passphrases" : "passwords", entropy, seconds,
+                count / seconds, phrase > 0 ? "passphrases" : "passwords", threads);
+        if (dictionary != null) {
+            System.err.printf("Dictionary check: %d regenerated against %d words of %d+ chars%n",
+                    dictionaryHits.sum(), dictionary.words(), noWords);
+        }
+        if (breached != null) {
+            System.err.printf("Breach check: %d regenerated against %d %s hashes%n",
+                    breachedHits.sum(), breached.size(), breached.algorithm());
+        }
+        if (filter != null) {
+            System.err.printf("Uniqueness: %d regenerated, %d remembered of capacity %d%n",
+                    filter.probableHits(), filter.size(), filter.capacity());
+        }
+    }
+
+    /**
+     * Reads passwords one per line and prints the line numbers of those in
+     * the breach corpus.
+     *
+     * @return the number of breached passwords
+     */
+    long check() throws IOException {
+        BreachedHashes breached = openBreached();
+        if (breached == null) {
+            throw new IOException("--check needs --breached FILE or the "
+                    + BreachedHashes.FILE_PROPERTY + " property");
+        }
+        InputStream in = "-".equals(check) ? System.in : new FileInputStream(check);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+                StandardCharsets.UTF_8), CHUNK_BYTES);
+        long lines = 0;
+        long hits = 0;
+        long start = System.nanoTime();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (breached.contains(line)) {
+                    hits++;
+                    System.out.println(lines);
+                }
+            }
+        } finally {
+            if (in != System.in) {
+                reader.close();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Checked %d passwords against %d %s hashes in %.3f s: %d breached%n",
+                lines, breached.size(), breached.algorithm(), seconds, hits);
+        return hits;
+    }
+
+    private BreachedHashes openBreached() throws IOException {
+        return breachedFile != null ? BreachedHashes.open(new File(breachedFile))
+                : BreachedHashes.openDefault();
+    }
+
+    private UniquenessFilter openFilter() throws IOException {
+        if (unique == null) {
+            return null;
+        }
+        long capacity = uniqueCapacity > 0 ? uniqueCapacity : Math.max(count, 1 << 20);
+        UniquenessFilter filter;
+        try {
+            filter = "-".equals(unique) ? UniquenessFilter.create(capacity)
+                    : UniquenessFilter.open(Paths.get(unique), capacity);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        // a filter that rotates during the run could repeat its own results
+        long needed = Math.max(count, uniqueCapacity);
+        if (filter.capacity() < needed) {
+            filter.close();
+            throw new IOException("-".equals(unique)
+                    ? "--unique-capacity " + uniqueCapacity + " is below the count " + count
+                    : unique + " has room for " + filter.capacity() + " results but this run needs "
+                            + needed + "; use a new --unique file");
+        }
+        return filter;
+    }
+
+    /**
+     * Generates one thread's share into a char buffer and writes it to the
+     * shared channel one encoded chunk at a time. Results that contain a
+     * dictionary word, are found in the breach corpus or are refused by the
+     * uniqueness filter are dropped from the buffer and made up for.
+     */
+    private class Worker {
+
+        private final PassphraseGenerator phrases;
+        private final DictionaryScanner dictionary;
+        private final BreachedHashes breached;
+        private final UniquenessFilter filter;
+        private final WritableByteChannel channel;
+        private final RandomSource rnd = RandomSource.current();
+        private final CharBuffer chars;
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        private final int[] starts = new int[FILTER_BATCH];
+        private final int[] lengths = new int[FILTER_BATCH];
+        private final long[] hashes = new long[FILTER_BATCH];
+        private final boolean[] added = new boolean[FILTER_BATCH];
+        private int rejects;
+
+        Worker(PassphraseGenerator phrases, DictionaryScanner dictionary, BreachedHashes breached,
+               UniquenessFilter filter, WritableByteChannel channel) {
+            this.phrases = phrases;
+            this.dictionary = dictionary;
+            this.breached = breached;
+            this.filter = filter;
+            this.channel = channel;
+            // room for at least one phrase however long
+            int phraseChars = phrases == null ? 0
+                    : phrase * (phrases.maxLength() + separator.length()) + 1;
+            chars = CharBuffer.allocate(Math.max(CHUNK_CHARS, phraseChars));
+        }
+
+        void run(long share) throws IOException {
+            if (phrases != null) {
+                runPhrases(share);
+            } else {
+                runPasswords(share);
+            }
+            flush();
+        }
+
+        private void runPasswords(long share) throws IOException {
+            char[] password = new char[length];
+            while (share > 0) {
+                if (chars.remaining() < length + 1) {
+                    flush();
+                }
+                long n = Math.min(share, chars.remaining() / (length + 1));
+                if (screening()) {
+                    n = Math.min(n, FILTER_BATCH);
+                }
+                int from = chars.position();
+                for (int i = 0; i < n; i++) {
+                    if (policy != null) {
+                        policy.generate(password, rnd);
+                    } else {
+                        engine.generate(password, rnd);
+                    }
+                    chars.put(password).put('\n');
+                }
+                share -= screening() ? screen(from) : n;
+            }
+        }
+
+        private void runPhrases(long share) throws IOException {
+            int maxChars = phrase * (phrases.maxLength() + separator.length()) + 1;
+            while (share > 0) {
+                if (chars.remaining() < maxChars) {
+                    flush();
+                }
+                long n = Math.min(share, chars.remaining() / maxChars);
+                int from = chars.position();
+                phrases.generate(n, phrase, minWord, separator, chars);
+                share -= screening() ? screen(from) : n;
+            }
+        }
+
+        private boolean screening() {
+            return dictionary != null || breached != null || filter != null;
+        }
+
+        /**
+         * Drops the lines written since from that contain a word, are
+         * breached or that the filter refuses, moving the rest down over
+         * them. The cheapest check runs first, and the filter only sees the
+         * lines that passed the others, so it never remembers a dropped one.
+         *
+         * @return the number of lines kept
+         */
+        private int screen(int from) throws IOException {
+            char[] array = chars.array();
+            int end = chars.position();
+            int to = from;
+            int kept = 0;
+            int line = from;
+            while (line < end) {
+                int n = 0;
+                for (; n < FILTER_BATCH && line < end; n++) {
+                    int eol = line;
+                    while (array[eol] != '\n') {
+                        eol++;
+                    }
+                    starts[n] = line;
+                    lengths[n] = eol - line;
+                    line = eol + 1;
+                }
+                int generated = n;
+                if (dictionary != null || breached != null) {
+                    n = dropRejected(array, n);
+                }
+                int accepted;
+                if (filter != null) {
+                    accepted = filter.add(array, starts, lengths, n, hashes, added);
+                } else {
+                    Arrays.fill(added, 0, n, true);
+                    accepted = n;
+                }
+                rejects = accepted == 0 ? rejects + generated : 0;
+                if (rejects >= BreachedHashes.MAX_REJECTS) {
+                    throw new IOException("Screening refused " + rejects
+                            + " results in a row; the configuration has too few left");
+                }
+                for (int i = 0; i < n; i++) {
+                    if (added[i]) {
+                        System.arraycopy(array, starts[i], array, to, lengths[i] + 1);
+                        to += lengths[i] + 1;
+                    }
+                }
+                kept += accepted;
+            }
+            chars.position(to);
+            return kept;
+        }
+
+        /**
+         * Removes the lines that contain a word or are breached from the
+         * first n of the batch.
+         *
+         * @return the number of lines left
+         */
+        private int dropRejected(char[] array, int n) {
+            int left = 0;
+            for (int i = 0; i < n; i++) {
+                if (dictionary != null && dictionary.containsWord(array, starts[i], lengths[i])) {
+                    dictionaryHits.increment();
+                } else if (breached != null && breached.contains(array, starts[i], lengths[i])) {
+                    breachedHits.increment();
+                } else {
+                    starts[left] = starts[i];
+                    lengths[left] = lengths[i];
+                    left++;
+                }
+            }
+            return left;
+        }
+
+        private void flush() throws IOException {
+            chars.flip();
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                if (result.isOverflow() || !chars.hasRemaining()) {
+                    if (!chars.hasRemaining()) {
+                        encoder.flush(bytes);
+                    }
+                    bytes.flip();
+                    synchronized (channel) {
+                        while (bytes.hasRemaining()) {
+                            channel.write(bytes);
+                        }
+                    }
+                    bytes.clear();
+                } else if (result.isError()) {
+                    result.throwException();
+                }
+            } while (chars.hasRemaining());
+            chars.clear();
+        }
+    }
+}
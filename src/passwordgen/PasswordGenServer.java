@@ -0,0 +1,370 @@
+/*
+ * PasswordGenServer.java
+ */
+
+package passwordgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local HTTP generation service, started with {@code --serve [port [minBits]]}.
+ * It listens on the loopback interface and answers
+ *
+ * <pre>
+ * GET /password?length=10&amp;upper=2&amp;numeric=2&amp;special=2&amp;specials=!%23$&amp;count=1
+ * GET /passphrase?words=5&amp;minLength=4&amp;separator=%20&amp;count=1
+ * </pre>
+ *
+ * A {@code policy} parameter on /password adds {@link PasswordPolicy} rules
+ * to the counts, and {@code noWords=M} regenerates passwords containing a
+ * pool word of M or more characters; see {@link DictionaryScanner}.
+ *
+ * with one result per line in text/plain and the entropy of each result in
+ * an {@code X-Entropy-Bits} header. Configurations below the server's minimum
+ * bits, or a higher {@code minBits} asked for by the request, are refused
+ * with 400, as are lengths over {@value #MAX_LENGTH}, passphrases of more than
+ * {@value #MAX_WORDS} words and counts over {@value #MAX_COUNT}. All requests
+ * share one loaded word pool, which is read-only, so no request copies or
+ * locks it.
+ *
+ * When the {@value BreachedHashes#FILE_PROPERTY} system property names a
+ * compiled breach corpus, results found in it are regenerated before they
+ * are sent.
+ */
+public class PasswordGenServer {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    /** Upper bound on results per request. */
+    static final int MAX_COUNT = 10000;
+
+    /** Upper bound on the length of a password. */
+    static final int MAX_LENGTH = 1024;
+
+    /** Upper bound on the words of a passphrase. */
+    static final int MAX_WORDS = 64;
+
+    /** JDK HTTP server setting for TCP_NODELAY on accepted connections. */
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    /** Most chars a response body reserves up front. */
+    private static final int MAX_RESERVE = 1 << 20;
+
+    private static final Logger LOG = Logger.getLogger(PasswordGenServer.class.getName());
+
+    private final MappedWordPool pool;
+    private final double minimumBits;
+    private final BreachedHashes breached;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public PasswordGenServer(MappedWordPool pool, int port) throws IOException {
+        this(pool, port, Entropy.defaultMinimumBits());
+    }
+
+    /**
+     * @param minimumBits least entropy a result may have
+     */
+    public PasswordGenServer(MappedWordPool pool, int port, double minimumBits)
+            throws IOException {
+        this(pool, port, minimumBits, BreachedHashes.openDefault());
+    }
+
+    /**
+     * @param breached corpus whose results are regenerated, or null
+     */
+    public PasswordGenServer(MappedWordPool pool, int port, double minimumBits,
+                             BreachedHashes breached) throws IOException {
+        this.pool = pool;
+        this.minimumBits = minimumBits;
+        this.breached = breached;
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            // otherwise Nagle holds each keep-alive response back until the
+            // client's delayed ACK, about 40 ms
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/password", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePassword(exchange);
+            }
+        });
+        server.createContext("/passphrase", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePassphrase(exchange);
+            }
+        });
+    }
+
+    /**
+     * @return true if the arguments ask for server mode
+     */
+    public static boolean isServeRequest(String[] args) {
+        return args.length > 0 && "--serve".equals(args[0]);
+    }
+
+    /**
+     * Loads the word pool and serves until the process is killed.
+     *
+     * @param args {@code --serve [port [minBits]]}
+     * @return 0 once serving, or 2 if the arguments are malformed
+     */
+    public static int run(String[] args) throws IOException {
+        int port;
+        double minimumBits;
+        try {
+            port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            minimumBits = args.length > 2 ? Double.parseDouble(args[2])
+                    : Entropy.defaultMinimumBits();
+        } catch (NumberFormatException e) {
+            System.err.println("Not a number: " + e.getMessage());
+            System.err.println("usage: pwgen --serve [port [minBits]]");
+            return 2;
+        }
+        PasswordGenServer server = new PasswordGenServer(MappedWordPool.openDefault(), port,
+                minimumBits);
+        server.start();
+        System.err.println("Serving /password and /passphrase on http://localhost:" + server.getPort());
+        return 0;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * One platform thread per core. Requests are CPU-bound, and long-lived
+     * workers keep their per-thread SecureRandom and passphrase scratch warm,
+     * where a thread per request would seed and allocate them every time.
+     */
+    static ExecutorService newRequestExecutor() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private void handlePassword(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            int length = cappedParam(query, "length", 10, MAX_LENGTH);
+            int upper = intParam(query, "upper", 2);
+            int numeric = intParam(query, "numeric", 2);
+            int special = intParam(query, "special", 2);
+            String specials = query.containsKey("specials") ? query.get("specials") : PasswordEngine.DEFAULT_SPECIAL;
+            int count = countParam(query);
+            PasswordEngine engine = null;
+            PasswordPolicy policy = null;
+            Entropy entropy;
+            if (query.containsKey("policy")) {
+                policy = PasswordPolicy.compile("length=" + length + "; upper=" + upper
+                        + "; numeric=" + numeric + "; special=" + special + "; specials=" + specials
+                        + "\n" + query.get("policy"), MAX_LENGTH);
+                length = policy.length();
+                entropy = policy.entropy();
+            } else {
+                engine = new PasswordEngine(length, upper, numeric, special, specials);
+                entropy = engine.entropy();
+            }
+            entropy.require(minimumBits(query));
+            int noWords = intParam(query, "noWords", 0);
+            DictionaryScanner dictionary = noWords > 0 ? DictionaryScanner.of(pool, noWords) : null;
+
+            RandomSource rnd = RandomSource.current();
+            char[] password = new char[length];
+            StringBuilder body = new StringBuilder(reserve((long) count * (length + 1)));
+            int rejects = 0;
+            for (int n = 0; n < count; n++) {
+                if (policy != null) {
+                    policy.generate(password, rnd);
+                } else {
+                    engine.generate(password, rnd);
+                }
+                if (dictionary != null && dictionary.containsWord(password, 0, length)
+                        || breached != null && breached.contains(password, 0, length)) {
+                    checkRejects(++rejects);
+                    n--;
+                    continue;
+                }
+                rejects = 0;
+                body.append(password).append('\n');
+            }
+            respond(exchange, 200, body, entropy);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n", null);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Failed to answer " + exchange.getRequestURI(), e);
+            respond(exchange, 500, "Internal error\n", null);
+        }
+    }
+
+    private void handlePassphrase(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            int words = cappedParam(query, "words", 5, MAX_WORDS);
+            int minLength = intParam(query, "minLength", 0);
+            String separator = query.containsKey("separator") ? query.get("separator") : " ";
+            int count = countParam(query);
+
+            if (words <= 0) {
+                throw new IllegalArgumentException("Passphrase length should be greater than 0.");
+            }
+            if (pool.countAtLeast(minLength) == 0) {
+                throw new IllegalArgumentException("No words of length " + minLength + " or more");
+            }
+            Entropy entropy = Entropy.ofPassphrase(pool, words, minLength, separator);
+            entropy.require(minimumBits(query));
+
+            StringBuilder body = new StringBuilder(reserve((long) count * words * 12));
+            PassphraseGenerator generator = PassphraseGenerator.of(pool);
+            if (breached == null) {
+                generator.generate(count, words, minLength, separator, body);
+            } else {
+                int rejects = 0;
+                for (int n = 0; n < count; n++) {
+                    int mark = body.length();
+                    generator.generate(1, words, minLength, separator, body);
+                    if (breached.contains(body.subSequence(mark, body.length() - 1))) {
+                        checkRejects(++rejects);
+                        body.setLength(mark);
+                        n--;
+                        continue;
+                    }
+                    rejects = 0;
+                }
+            }
+            respond(exchange, 200, body, entropy);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n", null);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Failed to answer " + exchange.getRequestURI(), e);
+            respond(exchange, 500, "Internal error\n", null);
+        }
+    }
+
+    /**
+     * @return the initial capacity for a body of about chars chars
+     */
+    private static int reserve(long chars) {
+        return (int) Math.min(chars, MAX_RESERVE);
+    }
+
+    private static void checkRejects(int rejects) {
+        if (rejects >= BreachedHashes.MAX_REJECTS) {
+            throw new IllegalArgumentException("Every result tried was rejected; "
+                    + "ask for a stronger configuration");
+        }
+    }
+
+    /**
+     * The server's minimum, raised by a minBits parameter if there is one.
+     */
+    private double minimumBits(Map<String, String> query) {
+        String value = query.get("minBits");
+        if (value == null) {
+            return minimumBits;
+        }
+        try {
+            return Math.max(minimumBits, Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for minBits: " + value);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, CharSequence body,
+                                Entropy entropy) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        if (entropy != null) {
+            exchange.getResponseHeaders().set("X-Entropy-Bits", String.format(Locale.ROOT, "%.2f", entropy.bits()));
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            throw new IllegalArgumentException("Only GET is supported");
+        }
+        Map<String, String> params = new HashMap<String, String>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                               URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            LOG.log(Level.SEVERE, null, e);
+        }
+        return params;
+    }
+
+    private static int countParam(Map<String, String> query) {
+        int count = intParam(query, "count", 1);
+        if (count < 1 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("count must be between 1 and " + MAX_COUNT);
+        }
+        return count;
+    }
+
+    private static int cappedParam(Map<String, String> query, String name, int defaultValue,
+                                   int max) {
+        int n = intParam(query, name, defaultValue);
+        if (n > max) {
+            throw new IllegalArgumentException(name + " must be at most " + max);
+        }
+        return n;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 0) {
+                throw new IllegalArgumentException("Negative value for " + name + ": " + value);
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + name + ": " + value);
+        }
+    }
+}
@@ -14,6 +14,8 @@ import org.jdesktop.application.FrameView;
 import org.jdesktop.application.TaskMonitor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import javax.swing.Timer;
 import javax.swing.Icon;
 import javax.swing.JDialog;
@@ -22,6 +24,10 @@ import javax.swing.SwingUtilities;
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import javax.swing.JTextField;
 
 /**
@@ -32,22 +38,38 @@ public class PasswordGenView extends FrameView {
     public PasswordGenView(SingleFrameApplication app) {
         super(app);
         
-        SwingWorker doWork = new SwingWorker(){
-           public Object doInBackground(){  
-
-                if ( m_wordList == null )
+        // starts loading the word pool in the background; the window does not wait for it
+        WordPoolResource.pool().whenComplete(new BiConsumer<MappedWordPool, Throwable>() {
+            public void accept(MappedWordPool words, Throwable failure) {
+                if ( failure != null )
                 {
-                    org.jdesktop.application.ResourceMap resourceMap = org.jdesktop.application.Application.getInstance(passwordgen.PasswordGenApp.class).getContext().getResourceMap(PasswordGenView.class);
-                    m_wordList = new WordList();
-                    m_wordList.importFromString(resourceMap.getString("wordPool.text"), true);
+                    Logger.getLogger(PasswordGenView.class.getName()).log(Level.WARNING, "Could not load the word pool", failure);
                 }
-                return null;
-           };
-        };
-        doWork.execute();
+            }
+        });
+        
+        // maps the breach corpus, if one is configured, off the event thread
+        breachedFuture = CompletableFuture.supplyAsync(new Supplier<BreachedHashes>() {
+            public BreachedHashes get() {
+                try
+                {
+                    return BreachedHashes.openDefault();
+                }
+                catch ( IOException e )
+                {
+                    throw new CompletionException(e);
+                }
+            }
+        });
         
         initComponents();
 
+        getFrame().addWindowListener(new WindowAdapter() {
+            @Override public void windowOpened(WindowEvent e) {
+                StartupTimes.firstFrame();
+            }
+        });
+
         spinLength.setValue(10);
         spinNumNumeric.setValue(2);
         spinNumUpper.setValue(2);
@@ -479,10 +501,19 @@ private void btnGenerateActionPerformed(java.awt.event.ActionEvent evt) {//GEN-F
         final int numSpecial = (Integer)spinNumSpecial.getValue();
         final int numUpper   = (Integer)spinNumUpper.getValue();
 
-        if ( numNumeric + numSpecial + numUpper > length )
+        special = txtAllowedSpecial.getText();
+
+        final PasswordEngine engine;
+        final Entropy entropy;
+        try
+        {
+            engine = new PasswordEngine( length, numUpper, numNumeric, numSpecial, special );
+            entropy = engine.entropy();
+            entropy.require(Entropy.defaultMinimumBits());
+        }
+        catch ( IllegalArgumentException e )
         {
-            JOptionPane.showMessageDialog(jTabbedPane1,
-                                          "Password length should be greater than or equal\nto the sum of the other 3 numbers.",
+            JOptionPane.showMessageDialog(jTabbedPane1, e.getMessage(),
                                           "FAIL", JOptionPane.ERROR_MESSAGE );
             return;
         }
@@ -490,54 +521,53 @@ private void btnGenerateActionPerformed(java.awt.event.ActionEvent evt) {//GEN-F
         progressBar.setValue(0);
         progressBar.setStringPainted(true);
         progressBar.setVisible(true);
-        progressBar.setMaximum(length * 2);
-
-        special = txtAllowedSpecial.getText();
+        progressBar.setMaximum(1);
 
         SwingWorker doWork = new SwingWorker() {
             public Object doInBackground(){                
 
-                Vector<Character> passwdchars = new Vector<Character>();
-
-                int numericCount = numNumeric;
-                int specialCount = numSpecial;
-                int upperCount   = numUpper;
-                
-                
-                while ( upperCount-- > 0 )
+                final BreachedHashes breached;
+                try
                 {
-                    passwdchars.add(alpha.toUpperCase().charAt(WordList.myRandom(alpha.length())));
-                    updateProgressBar(passwdchars.size());
+                    breached = breachedHashes();
                 }
-
-                while ( numericCount-- > 0 )
+                catch ( final IOException e )
                 {
-                    passwdchars.add(numeric.charAt(WordList.myRandom(numeric.length())));
-                    updateProgressBar(passwdchars.size());
+                    SwingUtilities.invokeLater(new Runnable(){
+                        public void run(){
+                            progressBar.setVisible(false);
+                            JOptionPane.showMessageDialog(jTabbedPane1,
+                                                          "Could not open the breached hash file: " + e.getMessage(),
+                                                          "FAIL", JOptionPane.ERROR_MESSAGE );
+                        }
+                    });
+                    return null;
                 }
 
-                while ( specialCount-- > 0 )
+                RandomSource rnd = RandomSource.current();
+                String result = engine.generate(rnd);
+                // a password from a breach corpus is replaced
+                for ( int tries = 1; breached != null && breached.contains(result)
+                        && tries < BreachedHashes.MAX_REJECTS; tries++ )
                 {
-                    passwdchars.add(special.charAt(WordList.myRandom(special.length())));
-                    updateProgressBar(passwdchars.size());
+                    result = engine.generate(rnd);
                 }
-
-                while ( passwdchars.size() < length )
+                if ( breached != null && breached.contains(result) )
                 {
-                    passwdchars.add(alpha.charAt(WordList.myRandom(alpha.length())));
-                    updateProgressBar(passwdchars.size());
+                    SwingUtilities.invokeLater(new Runnable(){
+                        public void run(){
+                            progressBar.setVisible(false);
+                            JOptionPane.showMessageDialog(jTabbedPane1,
+                                                          "Every password tried was breached; choose a stronger configuration.",
+                                                          "FAIL", JOptionPane.ERROR_MESSAGE );
+                        }
+                    });
+                    return null;
                 }
-                
-                String result = "";                
 
-                while ( passwdchars.size() > 0 )
-                {
-                    result += passwdchars.remove(WordList.myRandom(passwdchars.size()));
-                    updateProgressBar( length + result.length() );
-                }
-
-                updateProgressBar(length * 2);
+                updateProgressBar(1);
                 displayPassword(result);
+                showEntropy(entropy);
                 return null;
             }
         };
@@ -567,18 +597,49 @@ private void generatePassPhrase(java.awt.event.ActionEvent evt) {//GEN-FIRST:eve
     SwingWorker doWork = new SwingWorker(){
         public Object doInBackground(){        
     
-            String phrase = "";
-            setTextField(passPhrase, phrase);
-            
-            for ( int i = 0; i < phrLen; ++i )
+            final Entropy entropy;
+            final String phrase;
+            try
             {
-                updateProgressBar(i);
-                
-                phrase += " " + m_wordList.random(minLen);
-            
-                setTextField(passPhrase, phrase);
+                // waits here if the pool is still loading
+                MappedWordPool words = WordPoolResource.pool().join();
+                entropy = Entropy.ofPassphrase(words, phrLen, minLen, " ");
+                entropy.require(Entropy.defaultMinimumBits());
+                BreachedHashes breached = breachedHashes();
+                PassphraseGenerator generator = PassphraseGenerator.of(words);
+                String candidate = generator.generate(phrLen, minLen, ' ');
+                for ( int tries = 1; breached != null && breached.contains(candidate)
+                        && tries < BreachedHashes.MAX_REJECTS; tries++ )
+                {
+                    candidate = generator.generate(phrLen, minLen, ' ');
+                }
+                if ( breached != null && breached.contains(candidate) )
+                {
+                    throw new IllegalArgumentException(
+                            "Every passphrase tried was breached; choose a stronger configuration.");
+                }
+                phrase = candidate;
             }
+            catch ( Exception e )
+            {
+                final String message = e instanceof CompletionException
+                        ? "Could not load the word pool: " + e.getCause().getMessage()
+                        : e instanceof IOException
+                        ? "Could not open the breached hash file: " + e.getMessage()
+                        : e.getMessage();
+                SwingUtilities.invokeLater(new Runnable(){
+                    public void run(){
+                        progressBar.setVisible(false);
+                        JOptionPane.showMessageDialog(jTabbedPane1, message,
+                                                      "FAIL", JOptionPane.ERROR_MESSAGE );
+                    }
+                });
+                return null;
+            }
+
             updateProgressBar(phrLen);
+            setTextField(passPhrase, phrase);
+            showEntropy(entropy);
             return null;
         }
     };
@@ -586,6 +647,39 @@ private void generatePassPhrase(java.awt.event.ActionEvent evt) {//GEN-FIRST:eve
     doWork.execute();
 }//GEN-LAST:event_generatePassPhrase
 
+    /**
+     * Waits for the breach corpus mapped at startup.
+     *
+     * @return the corpus, or null if none is configured
+     * @throws IOException if it could not be opened
+     */
+    private BreachedHashes breachedHashes() throws IOException
+    {
+        try
+        {
+            return breachedFuture.join();
+        }
+        catch ( CompletionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void showEntropy( Entropy entropy )
+    {
+        final String text = "Strength: " + entropy;
+
+        SwingUtilities.invokeLater(new Runnable(){
+            public void run(){
+                statusMessageLabel.setText(text);
+            }
+        });
+    }
+
     private void setTextField( JTextField field, String value )
     {
         final String txtValue = value;
@@ -673,10 +767,10 @@ private void generatePassPhrase(java.awt.event.ActionEvent evt) {//GEN-FIRST:eve
     private final Icon[] busyIcons = new Icon[15];
     private int busyIconIndex = 0;
 
-    private static final String alpha = "qwertyuiopasdfghjklzxcvbnm";
-    private static final String numeric = "123456789";
-    private static String special = "!~#$%^&*_-+=|:<>.?";
-    private static WordList m_wordList = null;
+    /** The breach corpus, or null if none is configured. */
+    private final CompletableFuture<BreachedHashes> breachedFuture;
+
+    private static String special = PasswordEngine.DEFAULT_SPECIAL;
 
     private JDialog aboutBox;
 }
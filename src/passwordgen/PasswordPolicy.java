@@ -0,0 +1,541 @@
+/*
+ * PasswordPolicy.java
+ */
+
+package passwordgen;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A password policy compiled from a small rule language into a plan that
+ * samples compliant passwords directly, with no generate-and-reject loop.
+ *
+ * <p>A policy is a list of rules separated by ';' or line breaks, so values
+ * cannot contain either; a later rule replaces an earlier one of the same
+ * name:</p>
+ *
+ * <pre>
+ * length=16; upper=3; numeric=3; special=2; specials=!#$%
+ * exclude-ambiguous; exclude=xX; max-repeat=1
+ * no-leading-digit; first=upper|lower; last=special
+ * </pre>
+ *
+ * <ul>
+ * <li>length, upper, numeric, special: the length and the number of upper
+ * case, numeric and special characters, as on the spinners; the rest are
+ * lower case. Defaults 10, 2, 2 and 2.</li>
+ * <li>specials: the allowed special characters, by default
+ * {@link PasswordEngine#DEFAULT_SPECIAL}. They must not include letters or
+ * digits, so that every character belongs to one class.</li>
+ * <li>exclude: characters never to use; exclude-ambiguous excludes
+ * {@value #AMBIGUOUS}.</li>
+ * <li>max-repeat: the longest run of one repeated character.</li>
+ * <li>first, last: the classes (lower, upper, numeric, special, joined by
+ * '|' or ',') the first or last character must be in; no-leading-digit
+ * keeps the first character from being numeric.</li>
+ * </ul>
+ *
+ * <p>Compiling gives each position the set of classes it allows and counts,
+ * for every position, class counts used so far, class of the previous
+ * character and length of its run, the number of compliant ways to finish
+ * the password. Generation walks the positions choosing each class, and
+ * whether to repeat the previous character, with probability proportional to
+ * the completions it leaves, so every compliant password is equally likely,
+ * the cost is the same however strict the policy, and the entropy is exactly
+ * log2 of the number of compliant passwords.</p>
+ *
+ * <p>A policy is immutable and may be shared between threads as long as each
+ * thread passes its own buffer and RandomSource. Compiled policies are cached
+ * by their rules, so a spec seen again costs a lookup.</p>
+ */
+public final class PasswordPolicy {
+
+    /** Characters excluded by the exclude-ambiguous rule. */
+    public static final String AMBIGUOUS = "0O1lI|";
+
+    private static final int LOWER = 0;
+    private static final int UPPER = 1;
+    private static final int NUMERIC = 2;
+    private static final int SPECIAL = 3;
+    private static final int NONE = 4;
+    private static final String[] CLASS_NAMES = { "lower", "upper", "numeric", "special" };
+
+    /** Largest completion table a policy may compile to. */
+    private static final int MAX_TABLE = 1 << 22;
+
+    /** Most compiled policies kept. */
+    private static final int CACHE_SIZE = 16;
+
+    /** Most completion table cells the kept policies may hold together. */
+    private static final long CACHE_CELLS = 2L * MAX_TABLE;
+
+    private static final LinkedHashMap<String, PasswordPolicy> COMPILED =
+            new LinkedHashMap<String, PasswordPolicy>(16, 0.75f, true);
+
+    /** Table cells held by COMPILED; guarded by it. */
+    private static long compiledCells;
+
+    private final String spec;
+    private final int length;
+
+    /** Required count per class. */
+    private final int[] need = new int[4];
+
+    /** Allowed characters per class, after exclusions. */
+    private final char[][] alphabets = new char[4][];
+
+    /** Bit c of allowed[pos] is set if class c may appear at pos. */
+    private final int[] allowed;
+
+    /** Longest run of one character, 0 if unlimited. */
+    private final int maxRepeat;
+
+    /** Sizes of the last-class and run dimensions of the table. */
+    private final int lasts;
+    private final int runs;
+
+    /**
+     * Number of compliant completions of each state, see index(). Each
+     * position's row is scaled by its own power of two, so counts far past
+     * the range of a double stay finite: the true count at pos is
+     * ways * 2<sup>shift[pos] + shift[pos + 1] + ... + shift[length]</sup>.
+     */
+    private final double[] ways;
+
+    /** Binary exponent each position's row was scaled down by. */
+    private final int[] shift;
+
+    private volatile Entropy entropy;
+
+    private PasswordPolicy(String spec, Map<String, String> rules) {
+        this.spec = spec;
+        length = intRule(rules, "length", 10);
+        need[UPPER] = intRule(rules, "upper", 2);
+        need[NUMERIC] = intRule(rules, "numeric", 2);
+        need[SPECIAL] = intRule(rules, "special", 2);
+        need[LOWER] = length - need[UPPER] - need[NUMERIC] - need[SPECIAL];
+        if (need[LOWER] < 0) {
+            throw new IllegalArgumentException(
+                    "Password length should be greater than or equal\nto the sum of the other 3 numbers.");
+        }
+
+        String exclude = rules.containsKey("exclude") ? rules.get("exclude") : "";
+        if (rules.containsKey("exclude-ambiguous")) {
+            exclude += AMBIGUOUS;
+        }
+        String specials = rules.containsKey("specials") ? rules.get("specials")
+                : PasswordEngine.DEFAULT_SPECIAL;
+        alphabets[LOWER] = alphabet(PasswordEngine.LOWER, exclude);
+        alphabets[UPPER] = alphabet(PasswordEngine.LOWER.toUpperCase(), exclude);
+        alphabets[NUMERIC] = alphabet(PasswordEngine.NUMERIC, exclude);
+        alphabets[SPECIAL] = alphabet(specials, exclude);
+        for (char c : alphabets[SPECIAL]) {
+            if (Character.isLetterOrDigit(c)) {
+                throw new IllegalArgumentException("Special characters must not include letters or digits.");
+            }
+        }
+        for (int c = 0; c < 4; c++) {
+            if (need[c] > 0 && alphabets[c].length == 0) {
+                throw new IllegalArgumentException("No " + CLASS_NAMES[c] + " characters are allowed.");
+            }
+        }
+
+        maxRepeat = intRule(rules, "max-repeat", 0);
+        if (rules.containsKey("max-repeat") && maxRepeat < 1) {
+            throw new IllegalArgumentException("max-repeat should be at least 1.");
+        }
+
+        allowed = new int[length];
+        Arrays.fill(allowed, 0xf);
+        if (length > 0) {
+            if (rules.containsKey("first")) {
+                allowed[0] &= classes(rules.get("first"));
+            }
+            if (rules.containsKey("no-leading-digit")) {
+                allowed[0] &= ~(1 << NUMERIC);
+            }
+            if (rules.containsKey("last")) {
+                allowed[length - 1] &= classes(rules.get("last"));
+            }
+        }
+
+        // the previous character only matters when runs are limited
+        lasts = maxRepeat > 0 ? 5 : 1;
+        runs = maxRepeat > 0 ? maxRepeat : 1;
+        long size = (long) (length + 1) * (need[UPPER] + 1) * (need[NUMERIC] + 1)
+                * (need[SPECIAL] + 1) * lasts * runs;
+        if (size > MAX_TABLE) {
+            throw new IllegalArgumentException("This policy is too large to compile.");
+        }
+        ways = new double[(int) size];
+        shift = new int[length + 1];
+        countCompletions();
+        if (completions(0, 0, 0, 0, NONE, 1) == 0) {
+            throw new IllegalArgumentException("No password satisfies this policy.");
+        }
+    }
+
+    /**
+     * Compiles a policy, or returns the cached one with the same rules.
+     *
+     * @param spec the rules, see the class description
+     * @return the compiled policy
+     * @throws IllegalArgumentException if a rule is malformed or no
+     *         password satisfies the policy
+     */
+    public static PasswordPolicy compile(String spec) {
+        return compile(spec, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Compiles a policy as {@link #compile(String)} does, refusing before any
+     * table is built if its length is over maxLength.
+     *
+     * @throws IllegalArgumentException if a rule is malformed, the length is
+     *         over maxLength or no password satisfies the policy
+     */
+    public static PasswordPolicy compile(String spec, int maxLength) {
+        Map<String, String> rules = parse(spec);
+        if (intRule(rules, "length", 10) > maxLength) {
+            throw new IllegalArgumentException("length must be at most " + maxLength);
+        }
+        // later rules replace earlier ones, so the sorted rules identify the policy
+        String key = new TreeMap<String, String>(rules).toString();
+        synchronized (COMPILED) {
+            PasswordPolicy cached = COMPILED.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        PasswordPolicy policy = new PasswordPolicy(spec, rules);
+        synchronized (COMPILED) {
+            PasswordPolicy replaced = COMPILED.put(key, policy);
+            compiledCells += policy.ways.length - (replaced != null ? replaced.ways.length : 0);
+            Iterator<PasswordPolicy> eldest = COMPILED.values().iterator();
+            while (COMPILED.size() > 1
+                    && (COMPILED.size() > CACHE_SIZE || compiledCells > CACHE_CELLS)) {
+                compiledCells -= eldest.next().ways.length;
+                eldest.remove();
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Splits a spec into its rules, the last of each name winning.
+     */
+    private static Map<String, String> parse(String spec) {
+        Map<String, String> rules = new LinkedHashMap<String, String>();
+        for (String rule : spec.split("[;\n]")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int eq = rule.indexOf('=');
+            String name = (eq < 0 ? rule : rule.substring(0, eq)).trim().toLowerCase(Locale.ROOT);
+            String value = eq < 0 ? null : rule.substring(eq + 1).trim();
+            boolean flag = "exclude-ambiguous".equals(name) || "no-leading-digit".equals(name);
+            if (!flag && !"length".equals(name) && !"upper".equals(name) && !"numeric".equals(name)
+                    && !"special".equals(name) && !"specials".equals(name) && !"exclude".equals(name)
+                    && !"max-repeat".equals(name) && !"first".equals(name) && !"last".equals(name)) {
+                throw new IllegalArgumentException("Unknown policy rule: " + name);
+            }
+            if (flag != (value == null)) {
+                throw new IllegalArgumentException(flag ? "Policy rule " + name + " takes no value"
+                        : "Missing value for policy rule " + name);
+            }
+            rules.remove(name);
+            rules.put(name, value);
+        }
+        return rules;
+    }
+
+    /**
+     * @return the length of the passwords this policy generates
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the entropy of one password, which is exact
+     */
+    public Entropy entropy() {
+        Entropy e = entropy;
+        if (e == null) {
+            int exponent = 0;
+            for (int s : shift) {
+                exponent += s;
+            }
+            e = Entropy.ofCount(completions(0, 0, 0, 0, NONE, 1), exponent);
+            entropy = e;
+        }
+        return e;
+    }
+
+    /**
+     * Writes a compliant password into out[0, length()).
+     *
+     * @param out buffer of at least length() chars
+     * @param rnd source of randomness
+     */
+    public void generate(char[] out, RandomSource rnd) {
+        FlightEvents.PasswordEvent event = FlightEvents.beginPassword();
+        long start = Metrics.PASSWORD_LATENCY.start();
+        int[] used = new int[4];
+        int last = NONE;
+        int run = 1;
+        int previous = -1;
+        for (int pos = 0; pos < length; pos++) {
+            // the options are counted at the scale of row pos + 1
+            double target = rnd.nextDouble() * Math.scalb(completions(pos, used[UPPER],
+                    used[NUMERIC], used[SPECIAL], last, run), shift[pos]);
+
+            // options in the order sumOptions() adds them up; if rounding
+            // leaves the target past the total, the last option is kept
+            int chosen = -1;
+            boolean repeat = false;
+            for (int c = 0; c < 4; c++) {
+                if ((allowed[pos] & 1 << c) == 0 || used[c] == need[c]) {
+                    continue;
+                }
+                used[c]++;
+                boolean tracked = maxRepeat > 0 && c == last;
+                double fresh = (tracked ? alphabets[c].length - 1 : alphabets[c].length)
+                        * completions(pos + 1, used[UPPER], used[NUMERIC], used[SPECIAL], c, 1);
+                double again = tracked && run < maxRepeat
+                        ? completions(pos + 1, used[UPPER], used[NUMERIC], used[SPECIAL], c, run + 1)
+                        : 0;
+                used[c]--;
+                if (fresh > 0) {
+                    chosen = c;
+                    repeat = false;
+                    if (target < fresh) {
+                        break;
+                    }
+                    target -= fresh;
+                }
+                if (again > 0) {
+                    chosen = c;
+                    repeat = true;
+                    if (target < again) {
+                        break;
+                    }
+                    target -= again;
+                }
+            }
+
+            char[] table = alphabets[chosen];
+            int k;
+            if (repeat) {
+                k = previous;
+                run++;
+            } else if (maxRepeat > 0 && chosen == last) {
+                // any character of the class but the previous one
+                k = rnd.nextInt(table.length - 1);
+                if (k >= previous) {
+                    k++;
+                }
+                run = 1;
+            } else {
+                k = rnd.nextInt(table.length);
+                run = 1;
+            }
+            out[pos] = table[k];
+            used[chosen]++;
+            last = chosen;
+            previous = k;
+        }
+        Metrics.PASSWORD_LATENCY.stop(start);
+        FlightEvents.endPassword(event, spec, length, used[UPPER], used[NUMERIC], used[SPECIAL]);
+    }
+
+    /**
+     * Convenience for one-off callers.
+     *
+     * @param rnd source of randomness
+     * @return a new password
+     */
+    public String generate(RandomSource rnd) {
+        char[] out = new char[length];
+        generate(out, rnd);
+        return new String(out);
+    }
+
+    /**
+     * @return whether the password complies with this policy
+     */
+    public boolean accepts(CharSequence password) {
+        if (password.length() != length) {
+            return false;
+        }
+        int[] used = new int[4];
+        int run = 0;
+        for (int pos = 0; pos < length; pos++) {
+            char ch = password.charAt(pos);
+            int c = classOf(ch);
+            if (c < 0 || (allowed[pos] & 1 << c) == 0) {
+                return false;
+            }
+            used[c]++;
+            run = pos > 0 && password.charAt(pos - 1) == ch ? run + 1 : 1;
+            if (maxRepeat > 0 && run > maxRepeat) {
+                return false;
+            }
+        }
+        for (int c = 0; c < 4; c++) {
+            if (used[c] != need[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public String toString() {
+        return spec;
+    }
+
+    /**
+     * Fills the completion table from the last position back, scaling each
+     * row so that its largest count is below 2.
+     *
+     * @throws IllegalArgumentException if a count the row needs to keep
+     *         falls out of the range of a double after scaling
+     */
+    private void countCompletions() {
+        int row = ways.length / (length + 1);
+        for (int pos = length; pos >= 0; pos--) {
+            for (int u = 0; u <= need[UPPER]; u++) {
+                for (int n = 0; n <= need[NUMERIC]; n++) {
+                    for (int s = 0; s <= need[SPECIAL]; s++) {
+                        int lower = pos - u - n - s;
+                        if (lower < 0 || lower > need[LOWER]) {
+                            continue;
+                        }
+                        for (int last = 0; last < lasts; last++) {
+                            for (int run = 1; run <= runs; run++) {
+                                ways[index(pos, u, n, s, last, run)] = pos == length
+                                        ? (u == need[UPPER] && n == need[NUMERIC] && s == need[SPECIAL] ? 1 : 0)
+                                        : sumOptions(pos, new int[] { lower, u, n, s }, last, run);
+                            }
+                        }
+                    }
+                }
+            }
+
+            int from = pos * row;
+            double max = 0;
+            for (int i = from; i < from + row; i++) {
+                max = Math.max(max, ways[i]);
+            }
+            if (max == 0 || Double.isInfinite(max)) {
+                shift[pos] = 0;
+                if (max > 0) {
+                    throw new IllegalArgumentException("This policy is too large to compile.");
+                }
+                continue;
+            }
+            shift[pos] = Math.getExponent(max);
+            for (int i = from; i < from + row; i++) {
+                double scaled = Math.scalb(ways[i], -shift[pos]);
+                if (ways[i] > 0 && scaled < Double.MIN_NORMAL) {
+                    throw new IllegalArgumentException("This policy is too large to compile.");
+                }
+                ways[i] = scaled;
+            }
+        }
+    }
+
+    private double sumOptions(int pos, int[] used, int last, int run) {
+        double sum = 0;
+        for (int c = 0; c < 4; c++) {
+            if ((allowed[pos] & 1 << c) == 0 || used[c] == need[c]) {
+                continue;
+            }
+            used[c]++;
+            boolean tracked = maxRepeat > 0 && c == last;
+            sum += (tracked ? alphabets[c].length - 1 : alphabets[c].length)
+                    * completions(pos + 1, used[UPPER], used[NUMERIC], used[SPECIAL], c, 1);
+            if (tracked && run < maxRepeat) {
+                sum += completions(pos + 1, used[UPPER], used[NUMERIC], used[SPECIAL], c, run + 1);
+            }
+            used[c]--;
+        }
+        return sum;
+    }
+
+    private double completions(int pos, int u, int n, int s, int last, int run) {
+        return ways[index(pos, u, n, s, last, run)];
+    }
+
+    private int index(int pos, int u, int n, int s, int last, int run) {
+        int i = ((pos * (need[UPPER] + 1) + u) * (need[NUMERIC] + 1) + n) * (need[SPECIAL] + 1) + s;
+        return (i * lasts + (lasts == 1 ? 0 : last)) * runs + (runs == 1 ? 0 : run - 1);
+    }
+
+    private int classOf(char ch) {
+        for (int c = 0; c < 4; c++) {
+            for (char a : alphabets[c]) {
+                if (a == ch) {
+                    return c;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the distinct characters of table not in exclude.
+     */
+    private static char[] alphabet(String table, String exclude) {
+        StringBuilder kept = new StringBuilder(table.length());
+        for (int i = 0; i < table.length(); i++) {
+            char c = table.charAt(i);
+            if (exclude.indexOf(c) < 0 && kept.indexOf(String.valueOf(c)) < 0) {
+                kept.append(c);
+            }
+        }
+        return kept.toString().toCharArray();
+    }
+
+    private static int classes(String names) {
+        int mask = 0;
+        for (String name : names.split("[|,]")) {
+            name = name.trim().toLowerCase(Locale.ROOT);
+            if ("digit".equals(name)) {
+                name = "numeric";
+            }
+            int c = 0;
+            while (c < 4 && !CLASS_NAMES[c].equals(name)) {
+                c++;
+            }
+            if (c == 4) {
+                throw new IllegalArgumentException("Unknown character class: " + name);
+            }
+            mask |= 1 << c;
+        }
+        return mask;
+    }
+
+    private static int intRule(Map<String, String> rules, String name, int defaultValue) {
+        String value = rules.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 0) {
+                throw new IllegalArgumentException("Counts must not be negative.");
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * PatternMatchCache.java
+ */
+
+package passwordgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of compiled patterns and the positions of the words they
+ * match. Matching is done once per pattern and word list snapshot, split
+ * across the common fork-join pool, so repeated pattern-constrained draws
+ * cost one random index.
+ */
+final class PatternMatchCache {
+
+    /** Words per fork-join leaf. */
+    private static final int CHUNK = 4096;
+
+    /**
+     * A compiled pattern and the ascending positions of the matching words in
+     * the snapshot it was computed for.
+     */
+    static final class Match {
+
+        final Pattern pattern;
+        final Object snapshot;
+        final int[] matches;
+
+        Match(Pattern pattern, Object snapshot, int[] matches) {
+            this.pattern = pattern;
+            this.snapshot = snapshot;
+            this.matches = matches;
+        }
+    }
+
+    private final Map<String, Match> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    PatternMatchCache(final int capacity) {
+        entries = new LinkedHashMap<String, Match>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Match> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the matches of regex in the words, computing them if the
+     * pattern is not cached for this snapshot.
+     *
+     * @param regex the pattern; matched with find(), like filterWordListByPattern
+     * @param snapshot the word list contents; cached entries are tied to its
+     *        identity
+     */
+    Match get(String regex, WordSource snapshot) {
+        Match entry;
+        synchronized (entries) {
+            entry = entries.get(regex);
+        }
+        if (entry != null && entry.snapshot == snapshot) {
+            hits.increment();
+            Metrics.PATTERN_HITS.increment();
+            return entry;
+        }
+        misses.increment();
+        Metrics.PATTERN_MISSES.increment();
+
+        Pattern pattern = entry != null ? entry.pattern : Pattern.compile(regex);
+        entry = new Match(pattern, snapshot, match(pattern, snapshot));
+        synchronized (entries) {
+            entries.put(regex, entry);
+        }
+        return entry;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    static int[] match(Pattern pattern, WordSource words) {
+        int size = words.size();
+        if (size <= CHUNK) {
+            return new MatchTask(pattern, words, 0, size).compute();
+        }
+        return ForkJoinPool.commonPool().invoke(new MatchTask(pattern, words, 0, size));
+    }
+
+    private static final class MatchTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Pattern pattern;
+        private final WordSource words;
+        private final int from;
+        private final int to;
+
+        MatchTask(Pattern pattern, WordSource words, int from, int to) {
+            this.pattern = pattern;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected int[] compute() {
+            if (to - from <= CHUNK) {
+                int[] found = new int[to - from];
+                int n = 0;
+                Matcher matcher = pattern.matcher("");
+                for (int i = from; i < to; i++) {
+                    if (matcher.reset(words.word(i)).find()) {
+                        found[n++] = i;
+                    }
+                }
+                int[] result = new int[n];
+                System.arraycopy(found, 0, result, 0, n);
+                return result;
+            }
+
+            int mid = (from + to) >>> 1;
+            MatchTask right = new MatchTask(pattern, words, mid, to);
+            right.fork();
+            int[] a = new MatchTask(pattern, words, from, mid).compute();
+            int[] b = right.join();
+            int[] result = new int[a.length + b.length];
+            System.arraycopy(a, 0, result, 0, a.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * RandomSource.java
+ */
+
+package passwordgen;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Source of the random numbers used by every generator and by
+ * {@link WordList#myRandom(int)}.
+ *
+ * {@link #current()} returns a per-thread source backed by its own
+ * SecureRandom (DRBG where the runtime has it), so threads never contend on a
+ * shared seed. It pulls entropy in blocks and draws bounded integers with
+ * Lemire's multiply-and-reject method, which is unbiased and uses 16 bits per
+ * draw for bounds up to 2^16 (every character class) and 32 bits otherwise.
+ *
+ * Instances are not thread-safe; use {@link #current()} on each thread, or
+ * {@link #wrap(Random)} to plug in a Random of your own.
+ */
+public abstract class RandomSource {
+
+    private static final ThreadLocal<RandomSource> CURRENT = new ThreadLocal<RandomSource>() {
+        @Override protected RandomSource initialValue() {
+            return new SecureSource(newSecureRandom());
+        }
+    };
+
+    /**
+     * @return this thread's SecureRandom-backed source
+     */
+    public static RandomSource current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Wraps a Random, e.g. a seeded one for reproducible output.
+     *
+     * @param random the generator to draw from
+     * @return a source backed by it
+     */
+    public static RandomSource wrap(final Random random) {
+        return new RandomSource() {
+            @Override protected int next16() {
+                return random.nextInt() >>> 16;
+            }
+
+            @Override protected int next32() {
+                return random.nextInt();
+            }
+        };
+    }
+
+    /**
+     * @return a DRBG SecureRandom, or the platform default where DRBG is not
+     *         available (before Java 9)
+     */
+    static SecureRandom newSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * @return 16 uniformly random bits in the low half of the result
+     */
+    protected abstract int next16();
+
+    /**
+     * @return 32 uniformly random bits
+     */
+    protected abstract int next32();
+
+    /**
+     * Returns a uniformly distributed int in [0, bound).
+     *
+     * @param bound the exclusive upper bound, which must be positive
+     * @return the random value
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        if (bound <= 0x10000) {
+            int m = next16() * bound;
+            int low = m & 0xFFFF;
+            if (low < bound) {
+                int threshold = 0x10000 % bound;
+                while (low < threshold) {
+                    m = next16() * bound;
+                    low = m & 0xFFFF;
+                }
+            }
+            return m >>> 16;
+        }
+
+        long m = (next32() & 0xFFFFFFFFL) * bound;
+        long low = m & 0xFFFFFFFFL;
+        if (low < bound) {
+            long threshold = 0x100000000L % bound;
+            while (low < threshold) {
+                m = (next32() & 0xFFFFFFFFL) * bound;
+                low = m & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    /**
+     * Returns a uniformly distributed double in [0, 1) with 53 random bits.
+     *
+     * @return the random value
+     */
+    public double nextDouble() {
+        long bits = (long) (next32() >>> 6) << 27 | next32() >>> 5;
+        return bits * 0x1.0p-53;
+    }
+
+    /**
+     * Block-buffered SecureRandom. Refilling 4 kB at a time amortizes the
+     * SecureRandom call and its locking over about 2000 character draws.
+     */
+    private static final class SecureSource extends RandomSource {
+
+        private static final int BLOCK = 4096;
+
+        private final SecureRandom random;
+        private final byte[] block = new byte[BLOCK];
+        private int pos = BLOCK;
+
+        SecureSource(SecureRandom random) {
+            this.random = random;
+        }
+
+        private void refill() {
+            random.nextBytes(block);
+            pos = 0;
+            Metrics.RNG_BYTES.add(BLOCK);
+        }
+
+        @Override protected int next16() {
+            if (pos > BLOCK - 2) {
+                refill();
+            }
+            int v = (block[pos] & 0xFF) << 8 | (block[pos + 1] & 0xFF);
+            pos += 2;
+            return v;
+        }
+
+        @Override protected int next32() {
+            if (pos > BLOCK - 4) {
+                refill();
+            }
+            int v = (block[pos] & 0xFF) << 24 | (block[pos + 1] & 0xFF) << 16
+                    | (block[pos + 2] & 0xFF) << 8 | (block[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+    }
+}
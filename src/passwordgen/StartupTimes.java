@@ -0,0 +1,65 @@
+/*
+ * StartupTimes.java
+ */
+
+package passwordgen;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+/**
+ * Milestones of GUI startup, in milliseconds since the JVM started: when the
+ * main frame is first shown and when the word pool has been loaded. Each is
+ * recorded once and logged, so a run shows whether the window came up before
+ * the dictionary was parsed.
+ */
+final class StartupTimes {
+
+    private static final Logger LOG = Logger.getLogger(StartupTimes.class.getName());
+
+    private static volatile long firstFrame = -1;
+    private static volatile long poolReady = -1;
+
+    private StartupTimes() {
+    }
+
+    /**
+     * Records that the main frame has been shown, if not done already.
+     */
+    static synchronized void firstFrame() {
+        if (firstFrame < 0) {
+            firstFrame = uptime();
+            LOG.info("First frame shown " + firstFrame + " ms after JVM start");
+        }
+    }
+
+    /**
+     * Records that the word pool is ready, if not done already.
+     *
+     * @param words the number of words loaded
+     */
+    static synchronized void poolReady(int words) {
+        if (poolReady < 0) {
+            poolReady = uptime();
+            LOG.info("Word pool of " + words + " words ready " + poolReady + " ms after JVM start");
+        }
+    }
+
+    /**
+     * @return when the main frame was first shown, or -1 if it has not been
+     */
+    static long firstFrameMillis() {
+        return firstFrame;
+    }
+
+    /**
+     * @return when the word pool became ready, or -1 if it has not
+     */
+    static long poolReadyMillis() {
+        return poolReady;
+    }
+
+    private static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * UniquenessFilter.java
+ */
+
+package passwordgen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memory-bounded record of the passwords or passphrases already handed out,
+ * so a batch run never repeats one within the run or across recent runs.
+ *
+ * <p>It is a split-block Bloom filter: a key sets one bit in each of the
+ * eight longs of a single 64-byte block, so a lookup touches one cache line.
+ * At {@value #BITS_PER_KEY} bits per key, fewer than one in a thousand new
+ * keys test as seen. There are no false negatives, so {@link #add} is exact
+ * in the direction that matters: a key it accepts has certainly not been
+ * accepted before, and a caller that discards and regenerates the rare
+ * false positive never emits a repeat.</p>
+ *
+ * <p>The blocks are split by hash into {@value #SEGMENTS} segments, each
+ * with its own lock and two generations. Keys are checked against both and
+ * added to the active one; when that holds its share of the capacity, the
+ * older generation is cleared and becomes the active one. Memory therefore
+ * stays at four bytes per key of capacity. Each segment remembers at least
+ * the last capacity / {@value #SEGMENTS} keys that hashed to it, so the
+ * filter as a whole remembers roughly the last capacity keys: a segment that
+ * draws more than its share rotates sooner and forgets its older keys
+ * early.</p>
+ *
+ * <p>The filter lives in a direct buffer, or in a memory-mapped file that a
+ * later run reopens to carry on where the last one stopped. Counts are kept
+ * in the mapped header as keys are added; {@link #close()} forces the file
+ * to disk.</p>
+ */
+final class UniquenessFilter implements Closeable {
+
+    static final int BITS_PER_KEY = 16;
+
+    private static final int SEGMENTS = 64;
+    private static final int BLOCK_BYTES = 64;
+    private static final int KEYS_PER_BLOCK = BLOCK_BYTES * 8 / BITS_PER_KEY;
+
+    private static final int MAGIC = 0x50575546;
+    private static final int VERSION = 1;
+
+    /** Little-endian header: magic, version, blocks per generation, then per
+     *  segment the active generation and the key count of each generation. */
+    private static final int SEGMENT_HEADER = 16;
+    private static final int SEGMENT_BYTES = 24;
+    private static final int DATA = 4096;
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+    private final int blocks;
+    private final long perGeneration;
+    private final Object[] locks = new Object[SEGMENTS];
+    private final LongAdder probableHits = new LongAdder();
+
+    /** Written by batch adds so that their block reads are not dropped. */
+    private long touched;
+
+    private UniquenessFilter(ByteBuffer buffer, FileChannel channel, int blocks) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = channel;
+        this.blocks = blocks;
+        this.perGeneration = (long) blocks * KEYS_PER_BLOCK;
+        for (int s = 0; s < SEGMENTS; s++) {
+            locks[s] = new Object();
+        }
+    }
+
+    /**
+     * Creates an empty filter in memory.
+     *
+     * @param capacity about how many of the latest keys are remembered
+     */
+    static UniquenessFilter create(long capacity) {
+        int blocks = blocksFor(capacity);
+        UniquenessFilter filter = new UniquenessFilter(
+                ByteBuffer.allocateDirect((int) sizeOf(blocks)), null, blocks);
+        filter.writeHeader();
+        return filter;
+    }
+
+    /**
+     * Opens the filter kept in the file, creating it with the given capacity
+     * if it does not exist. An existing filter keeps the capacity it was
+     * created with.
+     *
+     * @throws IOException if the file cannot be mapped or is not a filter
+     */
+    static UniquenessFilter open(Path file, long capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean done = false;
+        try {
+            UniquenessFilter filter;
+            if (channel.size() == 0) {
+                int blocks = blocksFor(capacity);
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        sizeOf(blocks));
+                filter = new UniquenessFilter(map, channel, blocks);
+                filter.writeHeader();
+            } else {
+                if (channel.size() < DATA || channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException(file + " is not a uniqueness filter");
+                }
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        channel.size());
+                map.order(ByteOrder.LITTLE_ENDIAN);
+                int blocks = map.getInt(8);
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || blocks <= 0
+                        || sizeOf(blocks) != channel.size()) {
+                    throw new IOException(file + " is not a uniqueness filter");
+                }
+                filter = new UniquenessFilter(map, channel, blocks);
+            }
+            done = true;
+            return filter;
+        } finally {
+            if (!done) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Records the key unless it may have been recorded before.
+     *
+     * @return true if the key is new and now recorded, false if the filter
+     *         may have seen it, in which case the caller should discard it
+     */
+    boolean add(char[] chars, int from, int length) {
+        return add(hash(chars, from, length));
+    }
+
+    /**
+     * Adds the keys text[starts[i], starts[i] + lengths[i]) for i &lt; n as
+     * {@link #add(char[], int, int)} would, one after the other. All keys
+     * are hashed and their blocks read before the first is added, so the
+     * cache misses of a batch overlap instead of being paid one by one.
+     *
+     * @param hashes scratch space for at least n hashes
+     * @param added set to whether each key was added
+     * @return the number of keys added
+     */
+    int add(char[] text, int[] starts, int[] lengths, int n, long[] hashes, boolean[] added) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            long h = hash(text, starts[i], lengths[i]);
+            hashes[i] = h;
+            int at = offset(segment(h), 0, block(h));
+            sum += buffer.getLong(at) + buffer.getLong(at + BLOCK_BYTES);
+        }
+        touched = sum;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            added[i] = add(hashes[i]);
+            if (added[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean add(long h) {
+        long bits = mix(h + 0x9e3779b97f4a7c15L);
+        int segment = segment(h);
+        int block = block(h);
+        int header = SEGMENT_HEADER + segment * SEGMENT_BYTES;
+        synchronized (locks[segment]) {
+            int active = buffer.getInt(header);
+            int current = offset(segment, active, block);
+            if (contains(current, bits) || contains(offset(segment, 1 - active, block), bits)) {
+                probableHits.increment();
+                return false;
+            }
+            long count = buffer.getLong(header + 8 + active * 8);
+            if (count >= perGeneration) {
+                // the older generation is forgotten and refilled
+                active = 1 - active;
+                clear(segment, active);
+                buffer.putInt(header, active);
+                count = 0;
+                current = offset(segment, active, block);
+            }
+            for (int i = 0; i < 8; i++) {
+                int word = current + i * 8;
+                buffer.putLong(word, buffer.getLong(word) | 1L << (bits >>> (i * 6)));
+            }
+            buffer.putLong(header + 8 + active * 8, count + 1);
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of keys remembered, about the capacity once the
+     *         filter has filled
+     */
+    long size() {
+        long size = 0;
+        for (int s = 0; s < SEGMENTS; s++) {
+            synchronized (locks[s]) {
+                int header = SEGMENT_HEADER + s * SEGMENT_BYTES;
+                size += buffer.getLong(header + 8) + buffer.getLong(header + 16);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of keys the filter remembers when they spread
+     *         evenly over its segments
+     */
+    long capacity() {
+        return perGeneration * SEGMENTS;
+    }
+
+    /**
+     * @return the number of adds refused since the filter was opened, true
+     *         repeats and false positives alike
+     */
+    long probableHits() {
+        return probableHits.sum();
+    }
+
+    /**
+     * Forces a mapped filter to disk. The buffer stays mapped until it is
+     * garbage collected, so the filter must not be used afterwards.
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            try {
+                ((MappedByteBuffer) buffer).force();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private boolean contains(int block, long bits) {
+        for (int i = 0; i < 8; i++) {
+            if ((buffer.getLong(block + i * 8) & 1L << (bits >>> (i * 6))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clear(int segment, int generation) {
+        for (int block = 0; block < blocks; block++) {
+            int at = offset(segment, generation, block);
+            for (int i = 0; i < BLOCK_BYTES; i += 8) {
+                buffer.putLong(at + i, 0L);
+            }
+        }
+    }
+
+    private static int segment(long hash) {
+        return (int) (hash >>> 58);
+    }
+
+    private int block(long hash) {
+        return (int) (((hash & 0xffffffffL) * blocks) >>> 32);
+    }
+
+    /**
+     * The two generations of a block are adjacent, so checking both reads
+     * one 128-byte pair of cache lines.
+     */
+    private int offset(int segment, int generation, int block) {
+        return DATA + ((segment * blocks + block) * 2 + generation) * BLOCK_BYTES;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, blocks);
+    }
+
+    /**
+     * @return blocks per segment generation to hold the capacity
+     */
+    private static int blocksFor(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be greater than 0.");
+        }
+        long perSegment = (capacity + SEGMENTS - 1) / SEGMENTS;
+        long blocks = (perSegment + KEYS_PER_BLOCK - 1) / KEYS_PER_BLOCK;
+        if (sizeOf(blocks) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is too large.");
+        }
+        return (int) blocks;
+    }
+
+    private static long sizeOf(long blocks) {
+        return DATA + blocks * BLOCK_BYTES * 2 * SEGMENTS;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished like
+     * {@link FingerprintSet#fingerprint(String)}.
+     */
+    private static long hash(char[] chars, int from, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from, end = from + length; i < end; i++) {
+            h = (h ^ chars[i]) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
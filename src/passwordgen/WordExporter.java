@@ -0,0 +1,187 @@
+/*
+ * WordExporter.java
+ */
+
+package passwordgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes words as UTF-8, each followed by a delimiter. Words are encoded
+ * straight into a byte array, and packed words copied as the bytes they
+ * already are, which is handed to the channel through a direct buffer, so an
+ * export is a stream of large channel writes with no per-word garbage. One
+ * pair of buffers is kept between exports; an export running while another
+ * holds it allocates its own, which is dropped or kept afterwards.
+ */
+final class WordExporter {
+
+    private static final int BUFFER = 1 << 20;
+
+    /** Encoding scratch and the direct buffer it is written through. */
+    private static final class Buffers {
+        final byte[] bytes = new byte[BUFFER];
+        final ByteBuffer direct = ByteBuffer.allocateDirect(BUFFER);
+    }
+
+    /** The pair kept for the next export, or null; guarded by the class. */
+    private static Buffers spare;
+
+    private final byte[] delimiter;
+
+    /**
+     * @param delimiter written after every word
+     */
+    WordExporter(String delimiter) {
+        this.delimiter = (delimiter == null ? "" : delimiter).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes every word followed by the delimiter. The channel is not closed.
+     *
+     * @return the number of bytes written
+     */
+    long write(WritableByteChannel channel, WordSource words) throws IOException {
+        Buffers buffers = take();
+        try {
+            return write(channel, words, buffers);
+        } finally {
+            give(buffers);
+        }
+    }
+
+    private long write(WritableByteChannel channel, WordSource words, Buffers buffers)
+            throws IOException {
+        byte[] out = buffers.bytes;
+        PackedWords packed = words instanceof PackedWords ? (PackedWords) words : null;
+        int d = delimiter.length;
+        int at = 0;
+        long written = 0;
+        for (int i = 0, n = words.size(); i < n; i++) {
+            String word = packed == null ? words.word(i) : null;
+            // three bytes per UTF-16 unit is the UTF-8 worst case
+            int bound = (packed != null ? packed.byteLength(i) : 3 * word.length()) + d;
+            if (at + bound > out.length) {
+                written += drain(channel, buffers, at);
+                at = 0;
+            }
+            if (bound > out.length) {
+                byte[] large = packed != null ? packed.word(i).getBytes(StandardCharsets.UTF_8)
+                        : word.getBytes(StandardCharsets.UTF_8);
+                written += writeFully(channel, ByteBuffer.wrap(large));
+                written += writeFully(channel, ByteBuffer.wrap(delimiter));
+                continue;
+            }
+            at = packed != null ? packed.copy(i, out, at) : encode(word, out, at);
+            System.arraycopy(delimiter, 0, out, at, d);
+            at += d;
+        }
+        return written + drain(channel, buffers, at);
+    }
+
+    /**
+     * Returns whether text appended to the file would run into its last
+     * word, i.e. the file is not empty and ends with neither the delimiter
+     * nor a line break.
+     */
+    boolean needsSeparator(FileChannel file) throws IOException {
+        long size = file.size();
+        if (size == 0) {
+            return false;
+        }
+        int tail = (int) Math.min(size, Math.max(1, delimiter.length));
+        ByteBuffer last = ByteBuffer.allocate(tail);
+        while (last.hasRemaining()) {
+            if (file.read(last, size - tail + last.position()) < 0) {
+                break;
+            }
+        }
+        byte end = last.get(tail - 1);
+        if (end == '\n' || end == '\r') {
+            return false;
+        }
+        if (delimiter.length == 0 || tail < delimiter.length) {
+            return true;
+        }
+        for (int k = 0; k < delimiter.length; k++) {
+            if (last.get(k) != delimiter[k]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes just the delimiter, or a line break if it is empty.
+     */
+    void writeSeparator(WritableByteChannel channel) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(delimiter.length > 0 ? delimiter : new byte[] { '\n' }));
+    }
+
+    /**
+     * UTF-8 encodes the word into out at the given position, which must leave
+     * room for three bytes per char. Unpaired surrogates become '?', as with
+     * String.getBytes.
+     *
+     * @return the position after the word
+     */
+    private static int encode(String word, byte[] out, int at) {
+        for (int i = 0, n = word.length(); i < n; i++) {
+            char c = word.charAt(i);
+            if (c < 0x80) {
+                out[at++] = (byte) c;
+            } else if (c < 0x800) {
+                out[at++] = (byte) (0xc0 | c >> 6);
+                out[at++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(word.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, word.charAt(++i));
+                out[at++] = (byte) (0xf0 | cp >> 18);
+                out[at++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                out[at++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                out[at++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                out[at++] = (byte) '?';
+            } else {
+                out[at++] = (byte) (0xe0 | c >> 12);
+                out[at++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[at++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return at;
+    }
+
+    private static synchronized Buffers take() {
+        Buffers buffers = spare;
+        spare = null;
+        return buffers != null ? buffers : new Buffers();
+    }
+
+    private static synchronized void give(Buffers buffers) {
+        spare = buffers;
+    }
+
+    private static long drain(WritableByteChannel channel, Buffers buffers, int length) throws IOException {
+        long written = 0;
+        for (int from = 0; from < length; from += BUFFER) {
+            ByteBuffer direct = buffers.direct;
+            direct.clear();
+            direct.put(buffers.bytes, from, Math.min(BUFFER, length - from));
+            direct.flip();
+            written += writeFully(channel, direct);
+        }
+        return written;
+    }
+
+    private static long writeFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+        long written = 0;
+        while (bytes.hasRemaining()) {
+            written += channel.write(bytes);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * WordImporter.java
+ */
+
+package passwordgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming importer behind the WordList import methods. It decodes UTF-8 from
+ * a large direct buffer and splits on a literal delimiter (no regex) and on
+ * line breaks. An appending import hands words to the list in fixed-size
+ * batches, so memory use is the I/O buffers plus one batch on top of the
+ * words themselves, whatever the size of the input. A replacing import
+ * collects every word first and publishes them once, so readers never see
+ * the list part way through being replaced.
+ */
+final class WordImporter {
+
+    private static final int BYTE_BUFFER = 1 << 20;
+    private static final int CHAR_BUFFER = 1 << 16;
+    private static final int BATCH = 8192;
+
+    private final WordList target;
+    private String[] collected;
+    private final char[] delimiter;
+    private final boolean clear;
+
+    /** Start of a word longer than the char buffer. */
+    private final StringBuilder token = new StringBuilder();
+    private final String[] batch = new String[BATCH];
+    private int batched;
+    private long count;
+
+    /**
+     * @param target the list to add to
+     * @param delimiter literal word separator; line breaks always separate
+     * @param clear whether the words replace the current ones, in a single
+     *        publish once the input is read
+     */
+    WordImporter(WordList target, String delimiter, boolean clear) {
+        this.target = target;
+        this.collected = clear ? new String[BATCH] : null;
+        this.delimiter = delimiter == null ? new char[0] : delimiter.toCharArray();
+        this.clear = clear;
+    }
+
+    /**
+     * Creates an importer which collects the words instead of adding them to
+     * a list; see {@link #words()}.
+     *
+     * @param delimiter literal word separator; line breaks always separate
+     */
+    WordImporter(String delimiter) {
+        this.target = null;
+        this.collected = new String[BATCH];
+        this.delimiter = delimiter == null ? new char[0] : delimiter.toCharArray();
+        this.clear = false;
+    }
+
+    /**
+     * @return the words collected so far by an importer without a target list
+     */
+    String[] words() {
+        return Arrays.copyOf(collected, (int) count);
+    }
+
+    /**
+     * Reads the channel to its end. The channel is not closed.
+     *
+     * @return the number of words imported
+     */
+    long read(ReadableByteChannel channel) throws IOException {
+        return decode(channel, ByteBuffer.allocateDirect(BYTE_BUFFER));
+    }
+
+    /**
+     * Reads the remaining bytes of the buffer, which must hold complete
+     * UTF-8 sequences.
+     *
+     * @return the number of words imported
+     */
+    long read(ByteBuffer bytes) throws IOException {
+        return decode(null, bytes);
+    }
+
+    /**
+     * Decodes and tokenizes either the channel, refilling bytes from it, or
+     * just the remaining contents of bytes if there is no channel.
+     */
+    private long decode(ReadableByteChannel channel, ByteBuffer bytes) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER);
+
+        boolean eof = channel == null;
+        boolean drained = false;
+        while (!drained) {
+            if (channel != null) {
+                if (!eof && channel.read(bytes) < 0) {
+                    eof = true;
+                }
+                bytes.flip();
+            }
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            if (channel != null) {
+                bytes.compact();
+            }
+            if (eof && result.isUnderflow()) {
+                while (decoder.flush(chars).isOverflow()) {
+                    scan(chars, false);
+                }
+                drained = true;
+            }
+            scan(chars, drained);
+        }
+
+        // whatever is left is the last word
+        chars.flip();
+        emit(chars.array(), chars.position(), chars.limit());
+        flush();
+        if (target != null && clear) {
+            target.publish(collected, (int) count, true);
+        }
+        return count;
+    }
+
+    /**
+     * Emits every complete word in the decoded chars and compacts the buffer
+     * so that a word or delimiter cut off at the end is completed by the next
+     * decode.
+     *
+     * @param last whether no more chars follow, in which case a delimiter
+     *        prefix at the end is ordinary text
+     */
+    private void scan(CharBuffer chars, boolean last) {
+        chars.flip();
+        char[] a = chars.array();
+        int end = chars.limit();
+        int d = delimiter.length;
+        char first = d > 0 ? delimiter[0] : '\n';
+
+        int start = chars.position();
+        int i = start;
+        while (i < end) {
+            char c = a[i];
+            if (c == '\n' || c == '\r') {
+                emit(a, start, i);
+                start = ++i;
+            } else if (c == first && d > 0) {
+                if (i + d > end && !last) {
+                    break;
+                }
+                if (i + d <= end && delimiterAt(a, i)) {
+                    emit(a, start, i);
+                    i += d;
+                    start = i;
+                } else {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+
+        if (start == 0 && end == a.length && !last) {
+            // one word fills the whole buffer; keep it aside, minus a
+            // possible delimiter prefix at the end
+            int keep = Math.max(0, Math.min(d - 1, end));
+            token.append(a, 0, end - keep);
+            start = end - keep;
+        }
+        chars.position(start);
+        chars.compact();
+    }
+
+    private boolean delimiterAt(char[] a, int i) {
+        for (int k = 1; k < delimiter.length; k++) {
+            if (a[i + k] != delimiter[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void emit(char[] a, int from, int to) {
+        String word;
+        if (token.length() > 0) {
+            token.append(a, from, to - from);
+            word = token.toString();
+            token.setLength(0);
+        } else if (to > from) {
+            word = new String(a, from, to - from);
+        } else {
+            return;
+        }
+        batch[batched++] = word;
+        if (batched == BATCH) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (collected != null) {
+            if (count + batched > collected.length) {
+                collected = Arrays.copyOf(collected, collected.length * 2);
+            }
+            System.arraycopy(batch, 0, collected, (int) count, batched);
+            count += batched;
+            batched = 0;
+        } else if (batched > 0) {
+            target.publish(batch, batched, false);
+            count += batched;
+            batched = 0;
+        }
+    }
+}
@@ -22,22 +22,37 @@ package passwordgen;
 
 //package com.googlecode.wordlist;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.Externalizable;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Serializable;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 //import org.apache.commons.lang.NotImplementedException;
 
 /**
@@ -46,11 +61,25 @@ import java.util.regex.Pattern;
  * @author Srivathsa S
  * 
  */
-public class WordList implements Serializable {
+public class WordList implements Externalizable {
 
 	private static final long serialVersionUID = 8949126647512996259L;
 	private final Object listLock = new Object();
 	private final Object propertyLock = new Object();
+	private static final Logger LOG = Logger.getLogger(WordList.class.getName());
+	private final transient PatternMatchCache patternCache = new PatternMatchCache(PATTERN_CACHE_SIZE);
+
+	/** Number of distinct patterns whose matches are kept. */
+	private static final int PATTERN_CACHE_SIZE = 64;
+
+	/** Leading bytes and version of the {@link #writeTo} format. */
+	private static final int SNAPSHOT_MAGIC = 0x50574c53;
+	private static final int SNAPSHOT_VERSION = 1;
+
+	/** Snapshot flag bits. */
+	private static final int DEFLATED = 1;
+	private static final int COMPACT = 2;
+	private static final int DEDUPLICATING = 4;
 
 	public enum Difficulty {
 		EASY, MEDIUM, HARD
@@ -62,14 +91,131 @@ public class WordList implements Serializable {
 
 	private String type;
 	private Difficulty difficulty;
-	private ArrayList<String> wordList;
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+	private volatile boolean deduplicating;
+	private volatile boolean compact;
+
+	/**
+	 * Fingerprints of the current words while deduplicating, guarded by
+	 * listLock and rebuilt on demand after a remove or deserialization.
+	 */
+	private transient FingerprintSet fingerprints;
+
+	/**
+	 * Immutable view of the list. Writers publish a new snapshot through the
+	 * volatile field while holding listLock, so readers need neither the lock
+	 * nor a copy. An append may reuse the backing array of the previous
+	 * snapshot: every snapshot only reads below its own size and writers only
+	 * ever write above the size of the latest one. In compact mode the words
+	 * are held packed instead of as Strings.
+	 */
+	private static final class Snapshot implements WordSource {
+
+		static final Snapshot EMPTY = new Snapshot(new String[0], 0);
+
+		/** The words, or null if they are packed. */
+		final String[] words;
+		final PackedWords packed;
+		final int size;
+		private transient volatile LengthIndex lengthIndex;
+		private transient volatile double[] wordBits;
+		private transient volatile PassphraseGenerator passphrases;
+		private transient volatile DictionaryScanner.Cache dictionaries;
+
+		Snapshot(String[] words, int size) {
+			this.words = words;
+			this.packed = null;
+			this.size = size;
+		}
+
+		Snapshot(String[] words, LengthIndex lengthIndex) {
+			this(words, words.length);
+			this.lengthIndex = lengthIndex;
+		}
+
+		Snapshot(PackedWords packed) {
+			this.words = null;
+			this.packed = packed;
+			this.size = packed.size();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public String word(int i) {
+			return packed != null ? packed.word(i) : words[i];
+		}
+
+		public int length(int i) {
+			return packed != null ? packed.length(i) : words[i].length();
+		}
+
+		/**
+		 * @return a new array holding the words, decoded if packed
+		 */
+		String[] strings() {
+			if (packed == null) {
+				return Arrays.copyOf(words, size);
+			}
+			String[] strings = new String[size];
+			for (int i = 0; i < size; i++) {
+				strings[i] = packed.word(i);
+			}
+			return strings;
+		}
+
+		/**
+		 * @return the packed words, packing them first if need be
+		 */
+		PackedWords packed() {
+			return packed != null ? packed : PackedWords.pack(words, size);
+		}
+
+		double[] wordBits() {
+			double[] bits = wordBits;
+			if (bits == null) {
+				bits = Entropy.wordBits(this);
+				wordBits = bits;
+			}
+			return bits;
+		}
+
+		PassphraseGenerator passphrases() {
+			PassphraseGenerator generator = passphrases;
+			if (generator == null) {
+				generator = new PassphraseGenerator(lengthIndex());
+				passphrases = generator;
+			}
+			return generator;
+		}
+
+		DictionaryScanner.Cache dictionaries() {
+			DictionaryScanner.Cache cache = dictionaries;
+			if (cache == null) {
+				cache = new DictionaryScanner.Cache(this);
+				dictionaries = cache;
+			}
+			return cache;
+		}
+
+		LengthIndex lengthIndex() {
+			LengthIndex index = lengthIndex;
+			if (index == null) {
+				// racing builders produce equal indexes; either may win
+				index = packed != null ? new LengthIndex(packed)
+						: new LengthIndex(words, size);
+				lengthIndex = index;
+			}
+			return index;
+		}
+	}
 
 	/**
 	 * No-arg constructor which constructs a simple word list which can be later
 	 * populated with attributes.
 	 */
 	public WordList() {
-		wordList = new ArrayList<String>();
 	}
 
 	/**
@@ -80,7 +226,6 @@ public class WordList implements Serializable {
 	 */
 	public WordList(String type) {
 		this.type = type;
-		wordList = new ArrayList<String>();
 	}
 
 	/**
@@ -92,7 +237,6 @@ public class WordList implements Serializable {
 	 */
 	public WordList(Difficulty difficulty) {
 		this.setDifficulty(difficulty);
-		wordList = new ArrayList<String>();
 	}
 
 	/**
@@ -106,7 +250,6 @@ public class WordList implements Serializable {
 	public WordList(String type, Difficulty difficulty) {
 		this.setType(type);
 		this.setDifficulty(difficulty);
-		wordList = new ArrayList<String>();
 	}
 
 	/**
@@ -126,8 +269,8 @@ public class WordList implements Serializable {
 	}
 
 	/**
-	 * Imports the word list from a file containing a list of words delimitted
-	 * by a special character or a sequence
+	 * Imports the word list from a UTF-8 file containing a list of words
+	 * delimitted by a special character or a sequence, or by line breaks
 	 * 
 	 * @param filePath
 	 *            Path of the file containing words
@@ -141,71 +284,134 @@ public class WordList implements Serializable {
 	 */
 	public void importFromSpecialFile(String filePath, String delimiter,
 			boolean clearList) throws IOException {
-		if (clearList) {
-			synchronized (listLock) {
-				wordList.clear();
-			}
+		FileChannel channel = FileChannel.open(Paths.get(filePath),
+				StandardOpenOption.READ);
+		try {
+			importFromChannel(channel, filePath, delimiter, clearList);
+		} finally {
+			channel.close();
 		}
-		FileInputStream fis = new FileInputStream(filePath);
-		DataInputStream dis = new DataInputStream(fis);
-		BufferedReader br = new BufferedReader(new InputStreamReader(dis));
-		ArrayList<String> fileContent = new ArrayList<String>();
-		String content = null;
-		String[] list = null;
-		while ((content = br.readLine()) != null) {
-			fileContent.add(content);
-		}
-		for (String line : fileContent) {
-			list = line.split(delimiter);
-			for (String word : list) {
-				this.add(word);
+	}
+
+	/**
+	 * Imports the word list from a large UTF-8 file like
+	 * {@link #importFromSpecialFile(String, String, boolean)}, tokenizing
+	 * memory-mapped chunks of the file on all cores. The words and their
+	 * order are the same as with the sequential import.
+	 * 
+	 * @param filePath
+	 *            Path of the file containing words
+	 * @param delimiter
+	 *            The character or a sequence which delimits each word
+	 * @param clearList
+	 *            Remove the existing words from the list or not
+	 * @throws IOException
+	 *             Thrown when either file is not found or there is an issue
+	 *             with reading the file
+	 */
+	public void importFromSpecialFileParallel(String filePath,
+			String delimiter, boolean clearList) throws IOException {
+		FlightEvents.ImportEvent event = FlightEvents.beginImport();
+		long start = System.nanoTime();
+		long count = -1;
+		boolean parallel = false;
+		try {
+			String[] words;
+			FileChannel channel = FileChannel.open(Paths.get(filePath),
+					StandardOpenOption.READ);
+			try {
+				if (!ParallelWordImporter.worthwhile(channel.size())) {
+					// one core or a small file: chunking only adds copies
+					long read = new WordImporter(this, delimiter, clearList)
+							.read(channel);
+					lengthIndex();
+					recordImport(read, System.nanoTime() - start);
+					count = read;
+					return;
+				}
+				parallel = true;
+				words = new ParallelWordImporter(delimiter).read(channel);
+			} finally {
+				channel.close();
 			}
+			publish(words, words.length, clearList);
+			lengthIndex();
+			recordImport(words.length, System.nanoTime() - start);
+			count = words.length;
+		} finally {
+			FlightEvents.endImport(event, filePath, delimiter, clearList,
+					parallel, count, size());
 		}
-		br.close();
-		dis.close();
-		fis.close();
 	}
 
+	/**
+	 * Imports the word list from a stream of UTF-8 text containing words
+	 * delimited by a special character or a sequence, or by line breaks. The
+	 * stream is closed afterwards.
+	 * 
+	 * @param is
+	 *            Stream containing words
+	 * @param delimiter
+	 *            The character or a sequence which delimits each word
+	 * @param clearList
+	 *            Remove the existing words from the list or not
+	 * @throws IOException
+	 *             Thrown when there is an issue with reading the stream
+	 */
         public void importFromInputStream( InputStream is, String delimiter,
 			boolean clearList) throws IOException
         {
-            if (clearList) {
-			synchronized (listLock) {
-				wordList.clear();
-			}
-		}
-            DataInputStream dis = new DataInputStream(is);
-		BufferedReader br = new BufferedReader(new InputStreamReader(dis));
-		ArrayList<String> fileContent = new ArrayList<String>();
-		String content = null;
-		String[] list = null;
-		while ((content = br.readLine()) != null) {
-			fileContent.add(content);
-		}
-		for (String line : fileContent) {
-			list = line.split(delimiter);
-			for (String word : list) {
-				this.add(word);
-			}
+		ReadableByteChannel channel = Channels.newChannel(is);
+		try {
+			importFromChannel(channel, "stream", delimiter, clearList);
+		} finally {
+			channel.close();
 		}
-		br.close();
-		dis.close();
         }
+
+	/**
+	 * Streams words from the channel into the list in batches. The delimiter
+	 * is taken literally, not as a regular expression, and empty words are
+	 * skipped. The source only labels the flight recorder event.
+	 */
+	private void importFromChannel(ReadableByteChannel channel,
+			String source, String delimiter, boolean clearList)
+			throws IOException {
+		FlightEvents.ImportEvent event = FlightEvents.beginImport();
+		long start = System.nanoTime();
+		long count = -1;
+		try {
+			long read = new WordImporter(this, delimiter, clearList)
+					.read(channel);
+			lengthIndex();
+			recordImport(read, System.nanoTime() - start);
+			count = read;
+		} finally {
+			FlightEvents.endImport(event, source, delimiter, clearList, false,
+					count, size());
+		}
+	}
+
+	private static void recordImport(long count, long nanos) {
+		Metrics.imported(count, nanos);
+		if (LOG.isLoggable(Level.FINE)) {
+			double seconds = nanos / 1e9;
+			LOG.fine(String.format("Imported %d words in %.3f s (%.0f words/sec)",
+					count, seconds, count / Math.max(seconds, 1e-9)));
+		}
+	}
         
         public void importFromString( String addThese, boolean clearList )
         {
-            if (clearList) {
-			synchronized (listLock) {
-				wordList.clear();
-			}
-		}
-            
+            FlightEvents.ImportEvent event = FlightEvents.beginImport();
+            long start = System.nanoTime();
             String[] words = addThese.split(" ");
             
-            for ( String word : words )
-            {
-                this.add(word);
-            }
+            publish(words, words.length, clearList);
+            lengthIndex();
+            recordImport(words.length, System.nanoTime() - start);
+            FlightEvents.endImport(event, "string", " ", clearList, false,
+                    words.length, size());
         }
         
 	/**
@@ -226,8 +432,10 @@ public class WordList implements Serializable {
 	}
 
 	/**
-	 * Export the word list to a special file containing the words delimited by
-	 * a special character
+	 * Export the word list to a UTF-8 special file containing the words
+	 * delimited by a special character. An append only writes the new words
+	 * at the end of the file, after a delimiter if the file does not already
+	 * end with one or with a line break.
 	 * 
 	 * @param filePath
 	 *            Path of the special file
@@ -242,32 +450,267 @@ public class WordList implements Serializable {
 	 */
 	public void exportToSpecialFile(String filePath, String delimiter,
 			boolean append) throws IOException {
-		File file = new File(filePath);
-		if (!file.exists()) {
-			if (append) {
-				throw new FileNotFoundException();
-			} else {
-				file.createNewFile();
-			}
+		exportToSpecialFile(filePath, delimiter, append, false);
+	}
+
+	/**
+	 * Export the word list to a UTF-8 special file like
+	 * {@link #exportToSpecialFile(String, String, boolean)}. A full export may
+	 * be made atomic: the words are written and synced to a temporary file
+	 * next to the target, which is then renamed over it, so readers see
+	 * either the old file or the complete new one.
+	 * 
+	 * @param filePath
+	 *            Path of the special file
+	 * @param delimiter
+	 *            Delimiter separating each word
+	 * @param append
+	 *            Whether to append in an existing file
+	 * @param atomic
+	 *            Whether to replace the file atomically; not with append
+	 * @throws IOException
+	 *             Thrown if file not found when append is true or when the file
+	 *             cannot be created or when there is an issue during the write
+	 *             operation
+	 */
+	public void exportToSpecialFile(String filePath, String delimiter,
+			boolean append, boolean atomic) throws IOException {
+		if (append && atomic) {
+			throw new IllegalArgumentException(
+					"An append cannot replace the file atomically");
+		}
+		FlightEvents.ExportEvent event = FlightEvents.beginExport();
+		Snapshot current = snapshot;
+		boolean done = false;
+		try {
+			export(Paths.get(filePath), current, delimiter, append, atomic);
+			done = true;
+		} finally {
+			FlightEvents.endExport(event, filePath, delimiter, append, atomic,
+					current.size, done);
 		}
-		WordList tempWL = new WordList();
+	}
+
+	private static void export(Path path, Snapshot current, String delimiter,
+			boolean append, boolean atomic) throws IOException {
+		WordSource words = current.packed != null ? current.packed : current;
+		WordExporter exporter = new WordExporter(delimiter);
+
 		if (append) {
-			tempWL.importFromSpecialFile(filePath, delimiter, true);
+			if (!Files.exists(path)) {
+				throw new FileNotFoundException(path.toString());
+			}
+			boolean separate;
+			FileChannel tail = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				separate = exporter.needsSeparator(tail);
+			} finally {
+				tail.close();
+			}
+			FileChannel channel = FileChannel.open(path,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			try {
+				if (separate) {
+					exporter.writeSeparator(channel);
+				}
+				exporter.write(channel, words);
+			} finally {
+				channel.close();
+			}
+		} else if (atomic) {
+			Path dir = path.toAbsolutePath().getParent();
+			Path temp = Files.createTempFile(dir, path.getFileName().toString(),
+					".tmp");
+			boolean moved = false;
+			try {
+				FileChannel channel = FileChannel.open(temp,
+						StandardOpenOption.WRITE);
+				try {
+					exporter.write(channel, words);
+					channel.force(true);
+				} finally {
+					channel.close();
+				}
+				try {
+					Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+							StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+				}
+				moved = true;
+			} finally {
+				if (!moved) {
+					Files.deleteIfExists(temp);
+				}
+			}
+		} else {
+			FileChannel channel = FileChannel.open(path,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				exporter.write(channel, words);
+			} finally {
+				channel.close();
+			}
 		}
-		FileOutputStream fos = new FileOutputStream(filePath, false);
-		DataOutputStream dos = new DataOutputStream(fos);
-		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(dos));
-		for (String word : tempWL.getWordList()) {
-			bw.write(word + delimiter);
+	}
+
+	/**
+	 * Writes the words and attributes of the list in a compact binary
+	 * snapshot which {@link #readFrom(InputStream)} loads back. The stream is
+	 * flushed but not closed.
+	 * 
+	 * @param os
+	 *            Stream to write to
+	 * @throws IOException
+	 *             Thrown when there is an issue writing to the stream
+	 */
+	public void writeTo(OutputStream os) throws IOException {
+		writeTo(os, false);
+	}
+
+	/**
+	 * Writes the words and attributes of the list in a compact binary
+	 * snapshot which {@link #readFrom(InputStream)} loads back, optionally
+	 * deflating the words. The stream is flushed but not closed.
+	 * 
+	 * @param os
+	 *            Stream to write to
+	 * @param compress
+	 *            Whether to deflate the words
+	 * @throws IOException
+	 *             Thrown when there is an issue writing to the stream
+	 */
+	public void writeTo(OutputStream os, boolean compress) throws IOException {
+		Snapshot current = snapshot;
+		String type = getType();
+		Difficulty difficulty = getDifficulty();
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				os, 1 << 16));
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeByte(SNAPSHOT_VERSION);
+		out.writeByte((compress ? DEFLATED : 0) | (compact ? COMPACT : 0)
+				| (deduplicating ? DEDUPLICATING : 0));
+		out.writeBoolean(type != null);
+		if (type != null) {
+			out.writeUTF(type);
 		}
+		out.writeByte(difficulty == null ? -1 : difficulty.ordinal());
+
+		if (compress) {
+			// length-prefixed so that a reader never inflates past the end
+			ByteArrayOutputStream deflated = new ByteArrayOutputStream(1 << 16);
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DataOutputStream payload = new DataOutputStream(
+						new DeflaterOutputStream(deflated, deflater, 1 << 16));
+				current.packed().writeTo(payload);
+				payload.close();
+			} finally {
+				deflater.end();
+			}
+			out.writeInt(deflated.size());
+			deflated.writeTo(out);
+		} else {
+			current.packed().writeTo(out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a word list written by {@link #writeTo(OutputStream, boolean)},
+	 * with its words, type, difficulty and modes. Exactly the snapshot is
+	 * read from the stream, which is not closed.
+	 * 
+	 * @param is
+	 *            Stream to read from
+	 * @return The word list
+	 * @throws IOException
+	 *             Thrown when the stream cannot be read or does not hold a
+	 *             word list snapshot
+	 */
+	public static WordList readFrom(InputStream is) throws IOException {
+		WordList list = new WordList();
+		list.load(new DataInputStream(is));
+		return list;
+	}
+
+	private void load(DataInputStream in) throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			throw new IOException("Not a word list snapshot");
+		}
+		int version = in.readUnsignedByte();
+		if (version != SNAPSHOT_VERSION) {
+			throw new IOException("Unsupported word list snapshot version "
+					+ version);
+		}
+		int flags = in.readUnsignedByte();
+		String type = in.readBoolean() ? in.readUTF() : null;
+		int ordinal = in.readByte();
+		if (ordinal >= Difficulty.values().length) {
+			throw new IOException("Unknown difficulty " + ordinal);
+		}
+
+		PackedWords packed;
+		if ((flags & DEFLATED) != 0) {
+			int length = in.readInt();
+			if (length < 0) {
+				throw new IOException("Corrupt word list snapshot");
+			}
+			byte[] deflated = new byte[length];
+			in.readFully(deflated);
+			Inflater inflater = new Inflater();
+			try {
+				packed = PackedWords.readFrom(new DataInputStream(
+						new InflaterInputStream(new ByteArrayInputStream(
+								deflated), inflater, 1 << 16)));
+			} finally {
+				inflater.end();
+			}
+		} else {
+			packed = PackedWords.readFrom(in);
+		}
+
 		synchronized (listLock) {
-			for (String word : wordList) {
-				bw.write(word + delimiter);
+			compact = (flags & COMPACT) != 0;
+			deduplicating = (flags & DEDUPLICATING) != 0;
+			fingerprints = null;
+			if (compact) {
+				snapshot = new Snapshot(packed);
+			} else {
+				String[] words = new Snapshot(packed).strings();
+				snapshot = new Snapshot(words, words.length);
 			}
 		}
-		bw.close();
-		dos.close();
-		fos.close();
+		synchronized (propertyLock) {
+			setType(type);
+			setDifficulty(ordinal < 0 ? null : Difficulty.values()[ordinal]);
+		}
+		lengthIndex();
+	}
+
+	/**
+	 * Writes the list as a length-prefixed {@link #writeTo} snapshot.
+	 */
+	public void writeExternal(ObjectOutput out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		writeTo(bytes, false);
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	/**
+	 * Reads a list written by {@link #writeExternal(ObjectOutput)}.
+	 */
+	public void readExternal(ObjectInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Corrupt word list snapshot");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		load(new DataInputStream(new ByteArrayInputStream(bytes)));
 	}
 
 	/**
@@ -276,9 +719,7 @@ public class WordList implements Serializable {
 	 * @return Size of the word list
 	 */
 	public int size() {
-		synchronized (listLock) {
-			return wordList.size();
-		}
+		return snapshot.size;
 	}
 
 	/**
@@ -289,26 +730,33 @@ public class WordList implements Serializable {
 	 *            Length of the word
 	 */
 	public ArrayList<String> filterWordListByLength(int length) {
-		ArrayList<String> words = this.getWordList();
-		for (String word : this.wordList) {
-			if (word.length() != length) {
-				words.remove(word);
+		FlightEvents.FilterEvent event = FlightEvents.beginFilter();
+		ArrayList<String> words = new ArrayList<String>();
+		Snapshot current = snapshot;
+		for (int i = 0; i < current.size; i++) {
+			if (current.length(i) == length) {
+				words.add(current.word(i));
 			}
 		}
-                
+                FlightEvents.endFilter(event, "length", length, null,
+                        current.size, words.size());
                 return words;
 	}
 
         public ArrayList<String> filterWordListByMinLength( int length )
         {
-            ArrayList<String> words = this.getWordList();
-            for (String word : this.wordList) 
+            FlightEvents.FilterEvent event = FlightEvents.beginFilter();
+            ArrayList<String> words = new ArrayList<String>();
+            Snapshot current = snapshot;
+            for (int i = 0; i < current.size; i++) 
             {
-		if (word.length() < length)
+		if (current.length(i) >= length)
                 {
-                    words.remove(word);
+                    words.add(current.word(i));
 		}
             }
+            FlightEvents.endFilter(event, "minLength", length, null,
+                    current.size, words.size());
             return words;
         }
         
@@ -320,29 +768,195 @@ public class WordList implements Serializable {
 	 *            Pattern of the words which should be retained
 	 */
 	public ArrayList<String> filterWordListByPattern(String regex) {
-		ArrayList<String> words = this.getWordList();
-		Pattern pattern = Pattern.compile(regex);
-		for (String word : this.wordList) {
-			Matcher matcher = pattern.matcher(word);
-			if (!matcher.find()) {
-				words.remove(word);
-			}
+		FlightEvents.FilterEvent event = FlightEvents.beginFilter();
+		Snapshot current = snapshot;
+		int[] matches = null;
+		try {
+			matches = patternMatches(regex, current);
+		} finally {
+			FlightEvents.endFilter(event, "pattern", -1, regex,
+					current.size, matches == null ? -1 : matches.length);
+		}
+		ArrayList<String> words = new ArrayList<String>(matches.length);
+		for (int i : matches) {
+			words.add(current.word(i));
 		}
                 return words;
 	}
 
 	/**
-	 * Add a word to the list
+	 * Gets the number of pattern lookups answered from the match cache
+	 * 
+	 * @return Pattern cache hits
+	 */
+	public long getPatternCacheHits() {
+		return patternCache.hits();
+	}
+
+	/**
+	 * Gets the number of pattern lookups which had to compile the pattern or
+	 * match it against the list
+	 * 
+	 * @return Pattern cache misses
+	 */
+	public long getPatternCacheMisses() {
+		return patternCache.misses();
+	}
+
+	private int[] patternMatches(String regex, Snapshot current) {
+		return patternCache.get(regex, current).matches;
+	}
+
+	/**
+	 * Add a word to the list. While deduplicating, the word is normalized
+	 * first and dropped if the list already holds it.
 	 * 
 	 * @param word
 	 *            Word to be added
 	 */
 	public void add(String word) {
-		//word = word.toLowerCase();
+		publish(new String[] { word }, 1, false);
+	}
+
+	/**
+	 * Sets whether words are case folded, NFC normalized and deduplicated as
+	 * they are added or imported. Turning it on normalizes and deduplicates
+	 * the words already in the list, keeping the first of each.
+	 * 
+	 * @param deduplicating
+	 *            Whether to normalize and deduplicate words
+	 */
+	public void setDeduplicating(boolean deduplicating) {
 		synchronized (listLock) {
-			//if (!wordList.contains(word)) {
-				wordList.add(word);
-			//}
+			this.deduplicating = deduplicating;
+			fingerprints = null;
+			if (deduplicating) {
+				String[] words = snapshot.strings();
+				normalize(words, words.length);
+				int size = dedup(words, words.length, true);
+				snapshot = compact ? new Snapshot(PackedWords.pack(words, size))
+						: new Snapshot(words, size);
+			}
+		}
+	}
+
+	/**
+	 * Gets whether words are normalized and deduplicated as they are added
+	 * 
+	 * @return Whether the list is deduplicating
+	 */
+	public boolean isDeduplicating() {
+		return deduplicating;
+	}
+
+	/**
+	 * Sets whether the words are held packed as UTF-8 in one byte array with
+	 * an offset table instead of as String objects. This cuts the memory per
+	 * word from around fifty bytes plus its characters to four plus its
+	 * encoded bytes, at the cost of decoding each word as it is returned.
+	 * The current words are converted.
+	 * 
+	 * @param compact
+	 *            Whether to pack the words
+	 */
+	public void setCompact(boolean compact) {
+		synchronized (listLock) {
+			this.compact = compact;
+			Snapshot current = snapshot;
+			if (compact && current.packed == null) {
+				snapshot = new Snapshot(current.packed());
+			} else if (!compact && current.packed != null) {
+				String[] words = current.strings();
+				snapshot = new Snapshot(words, words.length);
+			}
+		}
+		lengthIndex();
+	}
+
+	/**
+	 * Gets whether the words are held packed
+	 * 
+	 * @return Whether the list is compact
+	 */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * Folds case and applies Unicode NFC, so that e.g. "Straße", "STRASSE"
+	 * and a decomposed "strasse" all become "strasse". Plain lower-case ASCII
+	 * words, the common case, are returned as they are.
+	 */
+	static String normalize(String word) {
+		boolean plain = true;
+		for (int i = 0, n = word.length(); i < n && plain; i++) {
+			char c = word.charAt(i);
+			plain = c < 0x80 && (c < 'A' || c > 'Z');
+		}
+		if (plain) {
+			return word;
+		}
+		String folded = word.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+		return Normalizer.normalize(folded, Normalizer.Form.NFC);
+	}
+
+	private static void normalize(String[] words, int count) {
+		for (int i = 0; i < count; i++) {
+			words[i] = normalize(words[i]);
+		}
+	}
+
+	/**
+	 * Moves the words of batch[0, count) not yet in the fingerprint set to
+	 * its front, adding them to the set. Must hold listLock.
+	 * 
+	 * @return the number of words kept
+	 */
+	private int dedup(String[] batch, int count, boolean clear) {
+		if (clear || fingerprints == null) {
+			Snapshot current = clear ? Snapshot.EMPTY : snapshot;
+			fingerprints = new FingerprintSet(current.size + count);
+			for (int i = 0; i < current.size; i++) {
+				fingerprints.add(current.word(i));
+			}
+		}
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (fingerprints.add(batch[i])) {
+				batch[kept++] = batch[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Publishes a new snapshot holding the first count words of batch after
+	 * the current words, or instead of them if clear is set. The existing
+	 * backing array is reused while it has room, so a run of adds costs
+	 * amortized O(1) each. While deduplicating, the words are normalized
+	 * outside the lock and batch is overwritten with the ones kept.
+	 */
+	void publish(String[] batch, int count, boolean clear) {
+		if (deduplicating) {
+			normalize(batch, count);
+		}
+		synchronized (listLock) {
+			if (deduplicating) {
+				count = dedup(batch, count, clear);
+			}
+			Snapshot current = clear ? Snapshot.EMPTY : snapshot;
+			if (compact) {
+				snapshot = new Snapshot(current.packed().append(batch, count));
+				return;
+			}
+			int size = current.size + count;
+			String[] words = current.words;
+			if (size > words.length) {
+				words = Arrays.copyOf(words,
+						Math.max(size, words.length + (words.length >> 1) + 16));
+			}
+			System.arraycopy(batch, 0, words, current.size, count);
+			snapshot = new Snapshot(words, size);
 		}
 	}
 
@@ -355,12 +969,27 @@ public class WordList implements Serializable {
 	public void remove(String word) {
 		word = word.toLowerCase();
 		synchronized (listLock) {
-			if (wordList.contains(word)) {
-				wordList.remove(word);
-			} else {
-				throw new UnsupportedOperationException(
-						"Word not found in the word list");
+			if (deduplicating) {
+				word = normalize(word);
+				fingerprints = null;
 			}
+			Snapshot current = snapshot;
+			for (int i = 0; i < current.size; i++) {
+				if (current.word(i).equals(word)) {
+					if (current.packed != null) {
+						snapshot = new Snapshot(current.packed.without(i));
+						return;
+					}
+					String[] words = new String[current.size - 1];
+					System.arraycopy(current.words, 0, words, 0, i);
+					System.arraycopy(current.words, i + 1, words, i,
+							words.length - i);
+					snapshot = new Snapshot(words, words.length);
+					return;
+				}
+			}
+			throw new UnsupportedOperationException(
+					"Word not found in the word list");
 		}
 	}
 
@@ -373,13 +1002,7 @@ public class WordList implements Serializable {
 	 * @return First word with the specified length
 	 */
 	public String first(int length) {
-		ArrayList<String> words = this.getWordList();
-                
-                this.filterWordListByLength(length);
-                
-                String result = words.get(0);
-                
-                return result;
+		return lengthIndex().first(length);
 	}
 
 	/**
@@ -391,13 +1014,9 @@ public class WordList implements Serializable {
 	 * @return First word which satisfies the pattern
 	 */
 	public String first(String regex) {
-		ArrayList<String> words = this.getWordList();
-                
-                this.filterWordListByPattern(regex);
-                
-                String result = words.get(0);
-                
-                return result;
+		Snapshot current = snapshot;
+		int[] matches = patternMatches(regex, current);
+		return matches.length == 0 ? null : current.word(matches[0]);
 	}
 
 	/**
@@ -409,23 +1028,68 @@ public class WordList implements Serializable {
 	 * @return Random word with the specified length
 	 */
 	public String random(int minLength) {
-		ArrayList<String> words = this.getWordList();
-                
-                if ( minLength > 0 )
-                {
-                    this.filterWordListByMinLength(minLength);
-                }
-                String result = words.get(myRandom(words.size()));
-                
-                return result;
+		FlightEvents.RandomWordEvent event = FlightEvents.beginRandomWord();
+		long start = Metrics.RANDOM_BY_LENGTH.start();
+		String word = lengthIndex().random(minLength);
+		Metrics.RANDOM_BY_LENGTH.stop(start);
+		FlightEvents.endRandomWord(event, "WordList", minLength, null, size(),
+				word == null ? "none" : FlightEvents.OK);
+		return word;
+	}
+
+	/**
+	 * Gets the number of words in the list which are of the specified length
+	 * or greater
+	 * 
+	 * @param minLength
+	 *            Minimum length of the word
+	 * @return Number of words with at least minLength characters
+	 */
+	public int countAtLeast(int minLength) {
+		return lengthIndex().countAtLeast(minLength);
+	}
+
+	/**
+	 * Returns the passphrase entropy table of the current snapshot, built on
+	 * first use; see {@link Entropy}.
+	 */
+	double[] wordBits() {
+		return snapshot.wordBits();
+	}
+
+	/**
+	 * Returns the passphrase generator of the current snapshot, built on
+	 * first use; see {@link PassphraseGenerator}.
+	 */
+	PassphraseGenerator passphrases() {
+		return snapshot.passphrases();
+	}
+
+	/**
+	 * Returns the dictionary scanners of the current snapshot; see
+	 * {@link DictionaryScanner}.
+	 */
+	DictionaryScanner.Cache dictionaries() {
+		return snapshot.dictionaries();
+	}
+
+	/**
+	 * Returns the length index of the current snapshot, building it on first
+	 * use. Imports build it eagerly so that draws after a load never pay for
+	 * it.
+	 */
+	LengthIndex lengthIndex() {
+		return snapshot.lengthIndex();
 	}
 
         
+        /**
+         * Returns an unbiased random index in [0, upper) drawn from this
+         * thread's {@link RandomSource}
+         */
         public static int myRandom( int upper )
         {
-            int idx = (int) ( Math.random()*upper );
-
-            return idx;
+            return RandomSource.current().nextInt(upper);
         }
 	/**
 	 * Returns a random word in the list which is of the given pattern. If no
@@ -436,13 +1100,21 @@ public class WordList implements Serializable {
 	 * @return Random word which satisfies the pattern
 	 */
 	public String random(String regex) {
-		ArrayList<String> words = this.getWordList();
-                
-                this.filterWordListByPattern(regex);
-                
-                String result = words.get(myRandom(words.size()));
-                
-                return result;
+		FlightEvents.RandomWordEvent event = FlightEvents.beginRandomWord();
+		long start = Metrics.RANDOM_BY_PATTERN.start();
+		Snapshot current = snapshot;
+		String outcome = FlightEvents.FAILED;
+		try {
+			int[] matches = patternMatches(regex, current);
+			String word = matches.length == 0 ? null
+					: current.word(matches[myRandom(matches.length)]);
+			Metrics.RANDOM_BY_PATTERN.stop(start);
+			outcome = word == null ? "none" : FlightEvents.OK;
+			return word;
+		} finally {
+			FlightEvents.endRandomWord(event, "WordList", -1, regex,
+					current.size, outcome);
+		}
 	}
 
 	/**
@@ -454,8 +1126,23 @@ public class WordList implements Serializable {
 	 *            Whether the list should be sorted in a decreasing order or not
 	 */
 	public void sortWordList(SortOrder order, boolean reverse) {
-		// TODO Sort the word list based on a particular order
-		throw new UnsupportedOperationException();
+		synchronized (listLock) {
+			Snapshot current = snapshot;
+			String[] source = current.packed != null ? current.strings()
+					: current.words;
+			String[] words = WordSorter.apply(source,
+					WordSorter.permutation(source, current.size, order,
+							reverse));
+			if (current.packed != null) {
+				snapshot = new Snapshot(PackedWords.pack(words, words.length));
+			} else if (order == SortOrder.LENGTH && !reverse) {
+				// already grouped the way the length index wants it
+				snapshot = new Snapshot(words, LengthIndex.ofSorted(words));
+			} else {
+				snapshot = new Snapshot(words, words.length);
+			}
+		}
+		lengthIndex();
 	}
 
 	/**
@@ -463,7 +1150,8 @@ public class WordList implements Serializable {
 	 */
 	public void reset() {
 		synchronized (listLock) {
-			wordList.clear();
+			snapshot = Snapshot.EMPTY;
+			fingerprints = null;
 		}
 		synchronized (propertyLock) {
 			this.setDifficulty(null);
@@ -523,10 +1211,11 @@ public class WordList implements Serializable {
 	 * @return Copy of the word list
 	 */
 	public ArrayList<String> getWordList() {
-		ArrayList<String> newWordList = new ArrayList<String>();
-		for (String word : wordList) {
-			newWordList.add(word);
+		Snapshot current = snapshot;
+		if (current.packed != null) {
+			return new ArrayList<String>(Arrays.asList(current.strings()));
 		}
-		return newWordList;
+		return new ArrayList<String>(
+				Arrays.asList(current.words).subList(0, current.size));
 	}
 }
\ No newline at end of file
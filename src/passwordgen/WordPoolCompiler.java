@@ -0,0 +1,98 @@
+/*
+ * WordPoolCompiler.java
+ */
+
+package passwordgen;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Build-time tool which compiles the word pool into the binary format read by
+ * {@link MappedWordPool}. It is run from build.xml after compilation:
+ *
+ * <pre>
+ * java passwordgen.WordPoolCompiler &lt;word file&gt; &lt;output file&gt;
+ * </pre>
+ *
+ * The word file is UTF-8 with one word per line, like
+ * {@link WordPoolResource#RESOURCE}. The layout (all integers big-endian) is:
+ *
+ * <pre>
+ * int     magic            'PWGP'
+ * int     version          1
+ * int     count            number of words
+ * int     maxLength        length of the longest word, in chars
+ * int[]   lengthStart      maxLength + 2 entries; lengthStart[k] is the first
+ *                          word with at least k chars
+ * int[]   offsets          count + 1 entries; word i is blob[offsets[i],offsets[i+1])
+ * byte[]  blob             UTF-8 words grouped by ascending length
+ * </pre>
+ */
+public class WordPoolCompiler {
+
+    static final int MAGIC = 0x50574750;
+    static final int VERSION = 1;
+
+    /**
+     * Writes the words of the list in the binary pool format.
+     *
+     * @param words the list to compile
+     * @param out the stream to write to; it is not closed
+     * @throws IOException if writing fails
+     */
+    public static void compile(WordList words, OutputStream out)
+            throws IOException {
+        LengthIndex index = words.lengthIndex();
+        int count = index.size();
+        int maxLength = index.maxLength();
+
+        byte[][] encoded = new byte[count][];
+        int blobSize = 0;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = index.atLeast(0, i).getBytes(StandardCharsets.UTF_8);
+            blobSize += encoded[i].length;
+        }
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(count);
+        dos.writeInt(maxLength);
+        for (int k = 0; k <= maxLength + 1; k++) {
+            dos.writeInt(count - index.countAtLeast(k));
+        }
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            dos.writeInt(offset);
+            offset += encoded[i].length;
+        }
+        dos.writeInt(blobSize);
+        for (int i = 0; i < count; i++) {
+            dos.write(encoded[i]);
+        }
+        dos.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: WordPoolCompiler <word file> <output file>");
+            System.exit(2);
+        }
+
+        WordList words = new WordList();
+        words.importFromTextFile(args[0], true);
+
+        FileOutputStream out = new FileOutputStream(args[1]);
+        try {
+            compile(words, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Compiled " + words.size() + " words into " + args[1]);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * WordPoolResource.java
+ */
+
+package passwordgen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The bundled word pool, a plain UTF-8 resource with one word per line. It is
+ * kept apart from the view's resource bundle so that building the window
+ * never reads it.
+ *
+ * <p>{@link #pool()} is the readiness handle: generators wait on it (off the
+ * event thread) instead of testing a field that may not be set yet. It opens
+ * the compiled pool once, on a background thread, when something first asks
+ * for it; this text file is parsed only if the build did not compile one.</p>
+ */
+public final class WordPoolResource {
+
+    /** Name of the word pool on the classpath. */
+    public static final String RESOURCE = "/passwordgen/resources/wordPool.txt";
+
+    private static CompletableFuture<MappedWordPool> pool;
+
+    private WordPoolResource() {
+    }
+
+    /**
+     * Returns the pool, starting to open it with
+     * {@link MappedWordPool#openDefault()} on the first call. The future
+     * completes exceptionally with the IOException if neither the compiled
+     * pool nor the text resource can be read.
+     *
+     * @return the future pool, shared by all callers
+     */
+    public static synchronized CompletableFuture<MappedWordPool> pool() {
+        if (pool == null) {
+            final CompletableFuture<MappedWordPool> future = new CompletableFuture<MappedWordPool>();
+            Thread loader = new Thread(new Runnable() {
+                public void run() {
+                    MappedWordPool words;
+                    try {
+                        words = MappedWordPool.openDefault();
+                    } catch (IOException e) {
+                        future.completeExceptionally(e);
+                        return;
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    StartupTimes.poolReady(words.size());
+                    future.complete(words);
+
+                    // build the tables the first passphrase needs before it is asked for
+                    PassphraseGenerator.of(words);
+                    words.wordBits();
+                }
+            }, "word-pool-loader");
+            loader.setDaemon(true);
+            loader.start();
+            pool = future;
+        }
+        return pool;
+    }
+
+    /**
+     * Reads the text pool into a new word list on the calling thread.
+     *
+     * @return the list
+     * @throws IOException if the resource is missing or cannot be read
+     */
+    static WordList read() throws IOException {
+        InputStream in = WordPoolResource.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            throw new IOException("No word pool on the classpath");
+        }
+        WordList words = new WordList();
+        // closes the stream
+        words.importFromInputStream(in, "\n", true);
+        return words;
+    }
+}
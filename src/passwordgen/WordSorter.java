@@ -0,0 +1,200 @@
+/*
+ * WordSorter.java
+ */
+
+package passwordgen;
+
+import java.util.Arrays;
+
+/**
+ * Sorts a word list by computing an int[] permutation of positions instead of
+ * moving the String objects around. Both orders are LSD radix sorts: length
+ * order is a single counting pass with the length as its only digit, and
+ * alphabetical order sorts on the first four UTF-16 code units packed into a
+ * long, sixteen bits a pass, then merge sorts each run of words sharing that
+ * prefix on their full code units. Both are stable, so equal keys keep their
+ * list order, and allocate nothing per word.
+ */
+final class WordSorter {
+
+    /** Runs this short are insertion sorted before merging. */
+    private static final int RUN = 32;
+
+    private WordSorter() {
+    }
+
+    /**
+     * Returns the positions of words[0, size) in the requested order.
+     */
+    static int[] permutation(String[] words, int size, WordList.SortOrder order, boolean reverse) {
+        if (order == WordList.SortOrder.LENGTH) {
+            return byLength(words, size, reverse);
+        }
+        return new Alphabetical(words, size, reverse).sort();
+    }
+
+    /**
+     * Returns words[0, size) rearranged by the permutation.
+     */
+    static String[] apply(String[] words, int[] perm) {
+        String[] sorted = new String[perm.length];
+        for (int i = 0; i < perm.length; i++) {
+            sorted[i] = words[perm[i]];
+        }
+        return sorted;
+    }
+
+    private static int[] byLength(String[] words, int size, boolean reverse) {
+        int maxLength = 0;
+        for (int i = 0; i < size; i++) {
+            maxLength = Math.max(maxLength, words[i].length());
+        }
+        int[] start = new int[maxLength + 2];
+        for (int i = 0; i < size; i++) {
+            start[key(words[i], maxLength, reverse) + 1]++;
+        }
+        for (int k = 1; k < start.length; k++) {
+            start[k] += start[k - 1];
+        }
+        int[] perm = new int[size];
+        for (int i = 0; i < size; i++) {
+            perm[start[key(words[i], maxLength, reverse)]++] = i;
+        }
+        return perm;
+    }
+
+    private static int key(String word, int maxLength, boolean reverse) {
+        return reverse ? maxLength - word.length() : word.length();
+    }
+
+    private static final class Alphabetical {
+
+        private final String[] words;
+        private final int size;
+        private final boolean reverse;
+
+        private int[] perm;
+        private long[] keys;
+        private int[] tempPerm;
+        private long[] tempKeys;
+
+        Alphabetical(String[] words, int size, boolean reverse) {
+            this.words = words;
+            this.size = size;
+            this.reverse = reverse;
+        }
+
+        int[] sort() {
+            perm = new int[size];
+            keys = new long[size];
+            tempPerm = new int[size];
+            tempKeys = new long[size];
+            for (int i = 0; i < size; i++) {
+                perm[i] = i;
+                // complemented keys sort descending
+                keys[i] = reverse ? ~prefix(words[i]) : prefix(words[i]);
+            }
+
+            int[] count = new int[1 << 16];
+            for (int shift = 0; shift < 64; shift += 16) {
+                radixPass(shift, count);
+            }
+
+            for (int lo = 0; lo < size; ) {
+                int hi = lo + 1;
+                while (hi < size && keys[hi] == keys[lo]) {
+                    hi++;
+                }
+                if (hi - lo > 1) {
+                    mergeSort(lo, hi);
+                }
+                lo = hi;
+            }
+            return perm;
+        }
+
+        /**
+         * Stable counting pass on the sixteen key bits at shift, skipped
+         * when every word has the same digit there.
+         */
+        private void radixPass(int shift, int[] count) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < size; i++) {
+                count[digit(keys[i], shift)]++;
+            }
+            if (size == 0 || count[digit(keys[0], shift)] == size) {
+                return;
+            }
+            int sum = 0;
+            for (int d = 0; d < count.length; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < size; i++) {
+                int slot = count[digit(keys[i], shift)]++;
+                tempPerm[slot] = perm[i];
+                tempKeys[slot] = keys[i];
+            }
+            int[] p = perm;
+            perm = tempPerm;
+            tempPerm = p;
+            long[] k = keys;
+            keys = tempKeys;
+            tempKeys = k;
+        }
+
+        private static int digit(long key, int shift) {
+            return (int) (key >>> shift) & 0xffff;
+        }
+
+        private void mergeSort(int lo, int hi) {
+            if (hi - lo <= RUN) {
+                for (int i = lo + 1; i < hi; i++) {
+                    int p = perm[i];
+                    int j = i - 1;
+                    while (j >= lo && compare(perm[j], p) > 0) {
+                        perm[j + 1] = perm[j];
+                        j--;
+                    }
+                    perm[j + 1] = p;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            mergeSort(lo, mid);
+            mergeSort(mid, hi);
+            if (compare(perm[mid - 1], perm[mid]) <= 0) {
+                return;
+            }
+            System.arraycopy(perm, lo, tempPerm, lo, hi - lo);
+            int i = lo;
+            int j = mid;
+            for (int k = lo; k < hi; k++) {
+                if (j >= hi || (i < mid && compare(tempPerm[i], tempPerm[j]) <= 0)) {
+                    perm[k] = tempPerm[i++];
+                } else {
+                    perm[k] = tempPerm[j++];
+                }
+            }
+        }
+
+        private int compare(int a, int b) {
+            int c = words[a].compareTo(words[b]);
+            return reverse ? -c : c;
+        }
+    }
+
+    /**
+     * Packs the first four code units, zero padded, so that unsigned long
+     * order agrees with String order wherever the prefixes differ.
+     */
+    private static long prefix(String word) {
+        long key = 0;
+        int n = Math.min(4, word.length());
+        for (int i = 0; i < n; i++) {
+            key |= (long) word.charAt(i) << (48 - 16 * i);
+        }
+        return key;
+    }
+}
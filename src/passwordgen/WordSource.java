@@ -0,0 +1,28 @@
+/*
+ * WordSource.java
+ */
+
+package passwordgen;
+
+/**
+ * Indexed, read-only access to a sequence of words, whether they are held as
+ * String objects or packed into bytes.
+ */
+interface WordSource {
+
+    /**
+     * @return the number of words
+     */
+    int size();
+
+    /**
+     * @return the word at position i, 0 &lt;= i &lt; size()
+     */
+    String word(int i);
+
+    /**
+     * @return the length in chars of the word at position i, without
+     *         necessarily materializing it
+     */
+    int length(int i);
+}